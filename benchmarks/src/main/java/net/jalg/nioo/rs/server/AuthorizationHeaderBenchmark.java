@@ -0,0 +1,39 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.AuthHeaderParsingException;
+import net.jalg.hawkj.AuthorizationHeader;
+import net.jalg.hawkj.HawkContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the Authorization request header.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AuthorizationHeaderBenchmark {
+
+    private String header;
+
+    @Setup
+    public void setUp() {
+        header = HawkContext.request("GET", "/resource/1", BenchmarkProvider.HOST, BenchmarkProvider.PORT)
+                .credentials(BenchmarkProvider.ID, BenchmarkProvider.PWD, BenchmarkProvider.ALGORITHM)
+                .build().createAuthorizationHeader().toString();
+    }
+
+    @Benchmark
+    public AuthorizationHeader parse() throws AuthHeaderParsingException {
+        return AuthorizationHeader.authorization(header);
+    }
+
+    @Benchmark
+    public String parseSinglePass() {
+        return HawkAuthorization.parse(header).getId();
+    }
+}
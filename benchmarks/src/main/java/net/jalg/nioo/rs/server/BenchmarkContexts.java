@@ -0,0 +1,488 @@
+package net.jalg.nioo.rs.server;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.*;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.security.Principal;
+import java.util.*;
+
+/**
+ * Minimal, allocation-free JAX-RS context implementations for driving the filter outside
+ * of a container. Mocking frameworks are deliberately not used because their invocation
+ * recording would dominate the measured allocation rates.
+ */
+final class BenchmarkContexts {
+
+    private BenchmarkContexts() {
+    }
+
+    /**
+     * Request context for a request with a fixed method, URI and Authorization header.
+     */
+    static class RequestContext implements ContainerRequestContext {
+
+        private final String method;
+        private final UriInfo uriInfo;
+        private final MultivaluedMap<String, String> headers = new MultivaluedHashMap<String, String>();
+        private final Map<String, Object> properties = new HashMap<String, Object>();
+        private SecurityContext securityContext = new InsecureSecurityContext();
+        private Response abortResponse;
+
+        RequestContext(String method, URI requestUri, String authorization) {
+            this.method = method;
+            this.uriInfo = new FixedUriInfo(requestUri);
+            headers.putSingle(HttpHeaders.AUTHORIZATION, authorization);
+        }
+
+        /**
+         * Prepare the context for the next invocation.
+         */
+        void reset() {
+            properties.clear();
+            abortResponse = null;
+        }
+
+        Response getAbortResponse() {
+            return abortResponse;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return properties.get(name);
+        }
+
+        @Override
+        public Collection<String> getPropertyNames() {
+            return properties.keySet();
+        }
+
+        @Override
+        public void setProperty(String name, Object object) {
+            properties.put(name, object);
+        }
+
+        @Override
+        public void removeProperty(String name) {
+            properties.remove(name);
+        }
+
+        @Override
+        public UriInfo getUriInfo() {
+            return uriInfo;
+        }
+
+        @Override
+        public void setRequestUri(URI requestUri) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setRequestUri(URI baseUri, URI requestUri) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Request getRequest() {
+            return null;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public void setMethod(String method) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public String getHeaderString(String name) {
+            return headers.getFirst(name);
+        }
+
+        @Override
+        public Date getDate() {
+            return null;
+        }
+
+        @Override
+        public Locale getLanguage() {
+            return null;
+        }
+
+        @Override
+        public int getLength() {
+            return -1;
+        }
+
+        @Override
+        public MediaType getMediaType() {
+            return null;
+        }
+
+        @Override
+        public List<MediaType> getAcceptableMediaTypes() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<Locale> getAcceptableLanguages() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Map<String, Cookie> getCookies() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public boolean hasEntity() {
+            return false;
+        }
+
+        @Override
+        public InputStream getEntityStream() {
+            return null;
+        }
+
+        @Override
+        public void setEntityStream(InputStream input) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SecurityContext getSecurityContext() {
+            return securityContext;
+        }
+
+        @Override
+        public void setSecurityContext(SecurityContext context) {
+            this.securityContext = context;
+        }
+
+        @Override
+        public void abortWith(Response response) {
+            this.abortResponse = response;
+        }
+    }
+
+    /**
+     * Base class for the interceptor contexts.
+     */
+    abstract static class InterceptorContext implements javax.ws.rs.ext.InterceptorContext {
+
+        private final Map<String, Object> properties = new HashMap<String, Object>();
+        private MediaType mediaType;
+
+        InterceptorContext(MediaType mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return properties.get(name);
+        }
+
+        @Override
+        public Collection<String> getPropertyNames() {
+            return properties.keySet();
+        }
+
+        @Override
+        public void setProperty(String name, Object object) {
+            properties.put(name, object);
+        }
+
+        @Override
+        public void removeProperty(String name) {
+            properties.remove(name);
+        }
+
+        @Override
+        public Annotation[] getAnnotations() {
+            return new Annotation[0];
+        }
+
+        @Override
+        public void setAnnotations(Annotation[] annotations) {
+        }
+
+        @Override
+        public Class<?> getType() {
+            return byte[].class;
+        }
+
+        @Override
+        public void setType(Class<?> type) {
+        }
+
+        @Override
+        public Type getGenericType() {
+            return byte[].class;
+        }
+
+        @Override
+        public void setGenericType(Type genericType) {
+        }
+
+        @Override
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        @Override
+        public void setMediaType(MediaType mediaType) {
+            this.mediaType = mediaType;
+        }
+    }
+
+    /**
+     * Reader context whose proceed() consumes the whole entity stream like an entity
+     * provider would.
+     */
+    static class ReaderContext extends InterceptorContext implements ReaderInterceptorContext {
+
+        private final MultivaluedMap<String, String> headers = new MultivaluedHashMap<String, String>();
+        private final byte[] readBuffer = new byte[8192];
+        private InputStream input;
+
+        ReaderContext(MediaType mediaType) {
+            super(mediaType);
+        }
+
+        @Override
+        public Object proceed() throws IOException, WebApplicationException {
+            while (input.read(readBuffer, 0, readBuffer.length) >= 0) {
+                ;
+            }
+            return null;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return input;
+        }
+
+        @Override
+        public void setInputStream(InputStream is) {
+            this.input = is;
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getHeaders() {
+            return headers;
+        }
+    }
+
+    /**
+     * Writer context whose proceed() writes a fixed body like a message body writer would.
+     */
+    static class WriterContext extends InterceptorContext implements WriterInterceptorContext {
+
+        private static final int CHUNK_SIZE = 8192;
+
+        private final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<String, Object>();
+        private final byte[] body;
+        private OutputStream output;
+
+        WriterContext(MediaType mediaType, byte[] body) {
+            super(mediaType);
+            this.body = body;
+        }
+
+        /**
+         * Prepare the context for the next invocation.
+         */
+        void reset(OutputStream output) {
+            this.output = output;
+            headers.clear();
+        }
+
+        @Override
+        public void proceed() throws IOException, WebApplicationException {
+            for (int off = 0; off < body.length; off += CHUNK_SIZE) {
+                output.write(body, off, Math.min(CHUNK_SIZE, body.length - off));
+            }
+        }
+
+        @Override
+        public Object getEntity() {
+            return body;
+        }
+
+        @Override
+        public void setEntity(Object entity) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return output;
+        }
+
+        @Override
+        public void setOutputStream(OutputStream os) {
+            this.output = os;
+        }
+
+        @Override
+        public MultivaluedMap<String, Object> getHeaders() {
+            return headers;
+        }
+    }
+
+    /**
+     * OutputStream that discards everything written to it.
+     */
+    static class NullOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+
+    private static class FixedUriInfo implements UriInfo {
+
+        private final URI requestUri;
+
+        private FixedUriInfo(URI requestUri) {
+            this.requestUri = requestUri;
+        }
+
+        @Override
+        public URI getRequestUri() {
+            return requestUri;
+        }
+
+        @Override
+        public String getPath() {
+            return requestUri.getPath();
+        }
+
+        @Override
+        public String getPath(boolean decode) {
+            return requestUri.getPath();
+        }
+
+        @Override
+        public List<PathSegment> getPathSegments() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<PathSegment> getPathSegments(boolean decode) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public UriBuilder getRequestUriBuilder() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public URI getAbsolutePath() {
+            return requestUri;
+        }
+
+        @Override
+        public UriBuilder getAbsolutePathBuilder() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public URI getBaseUri() {
+            return requestUri.resolve("/");
+        }
+
+        @Override
+        public UriBuilder getBaseUriBuilder() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getPathParameters() {
+            return new MultivaluedHashMap<String, String>();
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getPathParameters(boolean decode) {
+            return new MultivaluedHashMap<String, String>();
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getQueryParameters() {
+            return new MultivaluedHashMap<String, String>();
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getQueryParameters(boolean decode) {
+            return new MultivaluedHashMap<String, String>();
+        }
+
+        @Override
+        public List<String> getMatchedURIs() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<String> getMatchedURIs(boolean decode) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<Object> getMatchedResources() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public URI resolve(URI uri) {
+            return requestUri.resolve(uri);
+        }
+
+        @Override
+        public URI relativize(URI uri) {
+            return requestUri.relativize(uri);
+        }
+    }
+
+    private static class InsecureSecurityContext implements SecurityContext {
+
+        @Override
+        public Principal getUserPrincipal() {
+            return null;
+        }
+
+        @Override
+        public boolean isUserInRole(String role) {
+            return false;
+        }
+
+        @Override
+        public boolean isSecure() {
+            return false;
+        }
+
+        @Override
+        public String getAuthenticationScheme() {
+            return null;
+        }
+    }
+}
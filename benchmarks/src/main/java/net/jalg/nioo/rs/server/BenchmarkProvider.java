@@ -0,0 +1,91 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+
+import java.security.Principal;
+
+/**
+ * HawkServerProvider with a single set of credentials and no nonce storage, so that
+ * benchmarks measure the filter and not the provider.
+ */
+class BenchmarkProvider implements HawkServerProvider {
+
+    static final String HOST = "localhost";
+    static final int PORT = 8080;
+    static final String ID = "abc";
+    static final String PWD = "werxhqb98rpaxn39848xrunpaw3489ruxnpa98w4rxn";
+    static final Algorithm ALGORITHM = Algorithm.SHA_256;
+
+    private final HawkCredentials credentials = new HawkCredentials() {
+        @Override
+        public String getId() {
+            return ID;
+        }
+
+        @Override
+        public String getPwd() {
+            return PWD;
+        }
+
+        @Override
+        public Algorithm getAlgorithm() {
+            return ALGORITHM;
+        }
+
+        @Override
+        public ProvidedUser getProvidedUser() {
+            return user;
+        }
+    };
+
+    private final ProvidedUser user = new ProvidedUser() {
+        private final Principal principal = new Principal() {
+            @Override
+            public String getName() {
+                return ID;
+            }
+        };
+
+        @Override
+        public Principal getPrincipal() {
+            return principal;
+        }
+
+        @Override
+        public boolean isInRole(String role) {
+            return false;
+        }
+    };
+
+    @Override
+    public int getConfiguredValidationPort() {
+        return PORT;
+    }
+
+    @Override
+    public String getConfiguredValidationHost() {
+        return HOST;
+    }
+
+    @Override
+    public int getAllowedClockSkew() {
+        /*
+         * Headers are created once per trial, so they must stay valid for its duration.
+         */
+        return 3600;
+    }
+
+    @Override
+    public HawkCredentials getHawkCredentials(String realm, String id) {
+        return credentials;
+    }
+
+    @Override
+    public void noteNonce(String id, long ts, String nonce) {
+    }
+
+    @Override
+    public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) {
+        return false;
+    }
+}
@@ -0,0 +1,50 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.HawkContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The complete HawkServerFilter.filter(ContainerRequestContext) call for a valid request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FilterBenchmark {
+
+    private static final String PATH = "/resource/1";
+
+    @Param({"false", "true"})
+    public boolean reuseCryptoEngines;
+
+    private HawkServerFilter filter;
+    private BenchmarkContexts.RequestContext context;
+
+    @Setup
+    public void setUp() {
+        filter = new HawkServerFilter(new BenchmarkProvider(), "benchmark", false, false);
+        filter.setReuseCryptoEngines(reuseCryptoEngines);
+        String header = HawkContext.request("GET", PATH, BenchmarkProvider.HOST, BenchmarkProvider.PORT)
+                .credentials(BenchmarkProvider.ID, BenchmarkProvider.PWD, BenchmarkProvider.ALGORITHM)
+                .build().createAuthorizationHeader().toString();
+        context = new BenchmarkContexts.RequestContext("GET",
+                URI.create("http://" + BenchmarkProvider.HOST + ":" + BenchmarkProvider.PORT + PATH), header);
+    }
+
+    @Benchmark
+    public Object filter() throws IOException {
+        context.reset();
+        filter.filter(context);
+        if (context.getAbortResponse() != null) {
+            throw new IllegalStateException("Request was rejected with status "
+                    + context.getAbortResponse().getStatus());
+        }
+        return context.getSecurityContext();
+    }
+}
@@ -0,0 +1,49 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.AuthorizationHeader;
+import net.jalg.hawkj.HawkContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of the Authorization header MAC, comparing hawkj's HawkContext with the
+ * per-thread engines in HawkCrypto.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MacValidationBenchmark {
+
+    private static final String METHOD = "GET";
+    private static final String PATH = "/resource/1";
+
+    private AuthorizationHeader header;
+
+    @Setup
+    public void setUp() throws Exception {
+        header = AuthorizationHeader.authorization(HawkContext.request(METHOD, PATH,
+                BenchmarkProvider.HOST, BenchmarkProvider.PORT)
+                .credentials(BenchmarkProvider.ID, BenchmarkProvider.PWD, BenchmarkProvider.ALGORITHM)
+                .build().createAuthorizationHeader().toString());
+    }
+
+    @Benchmark
+    public boolean hawkContext() {
+        HawkContext hawk = HawkContext.request(METHOD, PATH, BenchmarkProvider.HOST, BenchmarkProvider.PORT)
+                .credentials(BenchmarkProvider.ID, BenchmarkProvider.PWD, BenchmarkProvider.ALGORITHM)
+                .tsAndNonce(header.getTs(), header.getNonce())
+                .hash(header.getHash()).build();
+        return hawk.isValidMac(header.getMac());
+    }
+
+    @Benchmark
+    public boolean reusedEngines() {
+        return HawkCrypto.isValidHeaderMac(header.getMac(), BenchmarkProvider.ALGORITHM, BenchmarkProvider.PWD,
+                header.getTs(), header.getNonce(), METHOD, PATH, BenchmarkProvider.HOST, BenchmarkProvider.PORT,
+                header.getHash(), null);
+    }
+}
@@ -0,0 +1,52 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.HawkContext;
+import org.openjdk.jmh.annotations.*;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request payload hash validation in HawkServerFilter.aroundReadFrom for various
+ * payload sizes, buffered and streaming.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RequestPayloadBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    private byte[] body;
+    private HawkServerFilter filter;
+    private BenchmarkContexts.ReaderContext context;
+
+    @Setup
+    public void setUp() {
+        body = new byte[size];
+        new Random(42).nextBytes(body);
+        filter = new HawkServerFilter(new BenchmarkProvider(), "benchmark", true, false);
+        filter.setStreamRequestPayload(streaming);
+        context = new BenchmarkContexts.ReaderContext(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+        HawkContext hawk = HawkContext.request("POST", "/resource/1", BenchmarkProvider.HOST, BenchmarkProvider.PORT)
+                .credentials(BenchmarkProvider.ID, BenchmarkProvider.PWD, BenchmarkProvider.ALGORITHM)
+                .body(body, MediaType.APPLICATION_OCTET_STREAM).build();
+        context.setProperty(HawkServerFilter.HAWK_SERVER_PROPERTY, hawk);
+    }
+
+    @Benchmark
+    public Object aroundReadFrom() throws IOException {
+        context.setInputStream(new ByteArrayInputStream(body));
+        return filter.aroundReadFrom(context);
+    }
+}
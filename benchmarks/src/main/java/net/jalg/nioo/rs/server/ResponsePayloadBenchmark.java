@@ -0,0 +1,52 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.HawkContext;
+import org.openjdk.jmh.annotations.*;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response payload hashing in HawkServerFilter.aroundWriteTo for various payload sizes.
+ * A bufferLimit of -1 buffers the whole body.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResponsePayloadBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    @Param({"-1", "2097152"})
+    public int bufferLimit;
+
+    private HawkServerFilter filter;
+    private BenchmarkContexts.WriterContext context;
+    private final OutputStream out = new BenchmarkContexts.NullOutputStream();
+
+    @Setup
+    public void setUp() {
+        byte[] body = new byte[size];
+        new Random(42).nextBytes(body);
+        filter = new HawkServerFilter(new BenchmarkProvider(), "benchmark", false, true);
+        filter.setResponseBufferLimit(bufferLimit);
+        context = new BenchmarkContexts.WriterContext(MediaType.APPLICATION_OCTET_STREAM_TYPE, body);
+        HawkContext hawk = HawkContext.request("GET", "/resource/1", BenchmarkProvider.HOST, BenchmarkProvider.PORT)
+                .credentials(BenchmarkProvider.ID, BenchmarkProvider.PWD, BenchmarkProvider.ALGORITHM).build();
+        context.setProperty(HawkServerFilter.HAWK_SERVER_PROPERTY, hawk);
+    }
+
+    @Benchmark
+    public Object aroundWriteTo() throws IOException {
+        context.reset(out);
+        filter.aroundWriteTo(context);
+        return context.getHeaders();
+    }
+}
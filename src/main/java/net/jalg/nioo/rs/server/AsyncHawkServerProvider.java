@@ -0,0 +1,49 @@
+package net.jalg.nioo.rs.server;
+
+import java.util.concurrent.Future;
+
+/** Optional extension of HawkServerProvider for providers that can look up credentials
+ * and check nonces asynchronously.
+ *
+ * If the provider passed to the filter implements this interface, the filter starts the
+ * credential lookup and a read-only nonce check at the same time once the Authorization
+ * header has been parsed, so that the I/O of both calls overlaps. Once the request has been
+ * authenticated, the filter records the nonce with {@link #noteNonceIfAbsentAsync} and
+ * accepts the request only if that reports the nonce as new. Implementations must check
+ * and note in one atomic step, or two concurrent copies of a request can both be accepted.
+ * <p>
+ * Failures should be reported by completing the future with a HawkProviderException.
+ */
+public interface AsyncHawkServerProvider extends HawkServerProvider {
+
+    /**
+     * Asynchronously look up the Hawk credentials for a given ID.
+     *
+     * @param realm The protection space (can be null)
+     * @param id The id of the credentials to look up
+     * @return Future of the credentials or of null if no credentials for this ID have been found.
+     */
+    public Future<HawkCredentials> getHawkCredentialsAsync(String realm, String id);
+
+    /**
+     * Asynchronously check whether the provided nonce has been used before.
+     *
+     * @param id Hawk ID this nonce has been used with
+     * @param ts Timestamp of the request
+     * @param nonce the nonce
+     * @return Future of true if this nonce has been used before.
+     */
+    public Future<Boolean> nonceHasBeenUsedBeforeAsync(String id, long ts, String nonce);
+
+    /**
+     * Asynchronously and atomically note the nonce unless it has been used before.
+     *
+     * @param id Hawk ID this nonce has been used with
+     * @param ts Timestamp of the request
+     * @param nonce the nonce
+     * @return Future of true if the nonce had not been used before and has now been noted,
+     * false if it has been used before.
+     */
+    public Future<Boolean> noteNonceIfAbsentAsync(String id, long ts, String nonce);
+
+}
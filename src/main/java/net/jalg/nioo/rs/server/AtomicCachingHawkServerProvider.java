@@ -0,0 +1,54 @@
+package net.jalg.nioo.rs.server;
+
+import java.util.concurrent.Executor;
+
+/** CachingHawkServerProvider for underlying providers that check and note nonces in one step.
+ *
+ * Credentials are cached as by {@link CachingHawkServerProvider}, and
+ * {@link #noteNonceIfAbsent(String, long, String)} is passed to the underlying provider.
+ * Usually obtained through {@link CachingHawkServerProvider#create}.
+ */
+public class AtomicCachingHawkServerProvider extends CachingHawkServerProvider
+        implements AtomicNonceHawkServerProvider {
+
+    private final AtomicNonceHawkServerProvider delegate;
+
+    /**
+     * Create a new caching provider with the defaults of
+     * {@link CachingHawkServerProvider#CachingHawkServerProvider(HawkServerProvider, int, long)}.
+     *
+     * @param delegate The provider to obtain credentials from and to note nonces with.
+     * @param maxSize Maximum number of cached entries.
+     * @param expireAfterMillis Time after which cached credentials must be reloaded.
+     */
+    public AtomicCachingHawkServerProvider(AtomicNonceHawkServerProvider delegate, int maxSize,
+                                           long expireAfterMillis) {
+        super(delegate, maxSize, expireAfterMillis);
+        this.delegate = delegate;
+    }
+
+    /**
+     * Create a new caching provider.
+     *
+     * @param delegate The provider to obtain credentials from and to note nonces with.
+     * @param maxSize Maximum number of cached entries.
+     * @param expireAfterMillis Time after which cached credentials must be reloaded.
+     * @param refreshAfterMillis Time after which cached credentials are reloaded in the background
+     *                           when they are accessed.
+     * @param negativeExpireAfterMillis Time for which unknown IDs are cached.
+     * @param refreshExecutor Executor to run background reloads.
+     */
+    public AtomicCachingHawkServerProvider(AtomicNonceHawkServerProvider delegate, int maxSize,
+                                           long expireAfterMillis, long refreshAfterMillis,
+                                           long negativeExpireAfterMillis, Executor refreshExecutor) {
+        super(delegate, maxSize, expireAfterMillis, refreshAfterMillis, negativeExpireAfterMillis,
+                refreshExecutor);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean noteNonceIfAbsent(String id, long ts, String nonce) throws HawkProviderException {
+        return delegate.noteNonceIfAbsent(id, ts, nonce);
+    }
+
+}
@@ -0,0 +1,26 @@
+package net.jalg.nioo.rs.server;
+
+/** Optional extension of HawkServerProvider for providers that can check and note
+ * a nonce in a single atomic operation.
+ *
+ * If the provider passed to the filter implements this interface, the filter calls
+ * {@link #noteNonceIfAbsent(String, long, String)} instead of the
+ * nonceHasBeenUsedBefore / noteNonce sequence. This saves one round-trip to the
+ * nonce storage and closes the window in which two concurrent replays could both
+ * pass the check.
+ */
+public interface AtomicNonceHawkServerProvider extends HawkServerProvider {
+
+    /**
+     * Note the nonce unless it has been used before.
+     *
+     * @param id Hawk ID this nonce has been used with
+     * @param ts Timestamp of the request
+     * @param nonce the nonce
+     * @return true if the nonce had not been used before and has now been noted,
+     * false if it has been used before.
+     * @throws HawkProviderException
+     */
+    public boolean noteNonceIfAbsent(String id, long ts, String nonce) throws HawkProviderException;
+
+}
@@ -0,0 +1,20 @@
+package net.jalg.nioo.rs.server;
+
+import java.util.List;
+
+/** NonceStore that can note many nonces in one operation.
+ *
+ * Stores with a high per-call latency, such as remote ones, should implement this
+ * interface so that {@link WriteBehindNonceStore} can write its batches in one call.
+ */
+public interface BatchNonceStore extends NonceStore {
+
+    /**
+     * Note a batch of used nonces.
+     *
+     * @param nonces The nonces to note.
+     * @throws HawkProviderException
+     */
+    public void noteNonces(List<UsedNonce> nonces) throws HawkProviderException;
+
+}
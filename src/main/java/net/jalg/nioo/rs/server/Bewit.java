@@ -0,0 +1,148 @@
+package net.jalg.nioo.rs.server;
+
+import javax.xml.bind.DatatypeConverter;
+import java.nio.charset.Charset;
+
+/** A parsed Hawk bewit, the query parameter that authenticates a single GET request URI.
+ *
+ * A bewit is the base64url encoding of the client ID, the expiry time in seconds,
+ * the MAC and the ext value, separated by backslashes.
+ */
+final class Bewit {
+
+    /**
+     * Name of the query parameter carrying the bewit.
+     */
+    static final String PARAMETER = "bewit";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAX_LENGTH = 4096;
+
+    private final String id;
+    private final long exp;
+    private final String mac;
+    private final String ext;
+
+    private Bewit(String id, long exp, String mac, String ext) {
+        this.id = id;
+        this.exp = exp;
+        this.mac = mac;
+        this.ext = ext;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    long getExp() {
+        return exp;
+    }
+
+    String getMac() {
+        return mac;
+    }
+
+    String getExt() {
+        return ext;
+    }
+
+    /**
+     * Decode a bewit.
+     *
+     * @param encoded The value of the bewit query parameter.
+     * @return The bewit or null if it is malformed.
+     */
+    static Bewit parse(String encoded) {
+        if (encoded == null || encoded.length() == 0 || encoded.length() > MAX_LENGTH) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(encoded.length() + 3);
+        for (int i = 0; i < encoded.length(); i++) {
+            char c = encoded.charAt(i);
+            if (c == '-') {
+                sb.append('+');
+            } else if (c == '_') {
+                sb.append('/');
+            } else {
+                sb.append(c);
+            }
+        }
+        while (sb.length() % 4 != 0) {
+            sb.append('=');
+        }
+        String decoded;
+        try {
+            decoded = new String(DatatypeConverter.parseBase64Binary(sb.toString()), UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        String[] parts = decoded.split("\\\\", -1);
+        if (parts.length != 4 || parts[0].length() == 0 || parts[2].length() == 0) {
+            return null;
+        }
+        long exp;
+        try {
+            exp = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return new Bewit(parts[0], exp, parts[2], parts[3].length() == 0 ? null : parts[3]);
+    }
+
+    /**
+     * Get the value of the bewit parameter from a raw query string.
+     *
+     * @param rawQuery The query or null.
+     * @return The encoded bewit or null if the query has no bewit parameter.
+     */
+    static String find(String rawQuery) {
+        if (rawQuery == null) {
+            return null;
+        }
+        int start = indexOfParameter(rawQuery);
+        if (start < 0) {
+            return null;
+        }
+        int valueStart = start + PARAMETER.length() + 1;
+        int end = rawQuery.indexOf('&', valueStart);
+        return rawQuery.substring(valueStart, end < 0 ? rawQuery.length() : end);
+    }
+
+    /**
+     * Build the resource covered by the bewit MAC, that is the request path and the
+     * query without the bewit parameter.
+     *
+     * @param rawPath
+     * @param rawQuery The query, containing the bewit parameter.
+     * @return The resource.
+     */
+    static String resource(String rawPath, String rawQuery) {
+        int start = indexOfParameter(rawQuery);
+        int end = rawQuery.indexOf('&', start);
+        String query;
+        if (end < 0) {
+            query = start == 0 ? "" : rawQuery.substring(0, start - 1);
+        } else {
+            query = rawQuery.substring(0, start) + rawQuery.substring(end + 1);
+        }
+        return query.length() == 0 ? rawPath : rawPath + '?' + query;
+    }
+
+    private static int indexOfParameter(String rawQuery) {
+        int i = 0;
+        while (i < rawQuery.length()) {
+            if (rawQuery.startsWith(PARAMETER, i) && rawQuery.length() > i + PARAMETER.length()
+                    && rawQuery.charAt(i + PARAMETER.length()) == '=') {
+                return i;
+            }
+            int next = rawQuery.indexOf('&', i);
+            if (next < 0) {
+                return -1;
+            }
+            i = next + 1;
+        }
+        return -1;
+    }
+
+}
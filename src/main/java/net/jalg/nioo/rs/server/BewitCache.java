@@ -0,0 +1,83 @@
+package net.jalg.nioo.rs.server;
+
+/** Bounded cache of bewits that have already been validated.
+ *
+ * Signed links are often fetched many times. For a cached bewit the filter does not
+ * need to decode the bewit, look up the credentials or calculate the MAC again. An entry
+ * is keyed by the complete request target the bewit has been validated for and is kept
+ * until the bewit expires or until it is evicted to make room for others.
+ * <p>
+ * Note that credential changes at the provider do not affect cached bewits.
+ */
+public class BewitCache {
+
+    private final BoundedCache<String, Entry> cache;
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxSize Maximum number of validated bewits to keep.
+     */
+    public BewitCache(int maxSize) {
+        this.cache = new BoundedCache<String, Entry>(maxSize);
+    }
+
+    /**
+     * Get the credentials a bewit has been validated with.
+     *
+     * @param key Bewit and request target.
+     * @param now Current time in seconds.
+     * @return The credentials or null if the bewit is not cached or has expired.
+     */
+    HawkCredentials get(String key, long now) {
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(now)) {
+            cache.remove(key, entry);
+            return null;
+        }
+        return entry.credentials;
+    }
+
+    /**
+     * Remember a validated bewit.
+     *
+     * @param key Bewit and request target.
+     * @param credentials
+     * @param exp Expiry time of the bewit in seconds.
+     * @param now Current time in seconds.
+     */
+    void put(String key, HawkCredentials credentials, long exp, long now) {
+        cache.putIfAbsent(key, new Entry(credentials, exp), now);
+    }
+
+    /**
+     * Remove all cached bewits, for example after credentials have been revoked.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    private static final class Entry extends BoundedCache.Entry {
+        private final HawkCredentials credentials;
+        private final long exp;
+
+        private Entry(HawkCredentials credentials, long exp) {
+            this.credentials = credentials;
+            this.exp = exp;
+        }
+
+        @Override
+        long evictionRank() {
+            return exp;
+        }
+
+        @Override
+        boolean isExpired(long now) {
+            return exp <= now;
+        }
+    }
+
+}
@@ -0,0 +1,288 @@
+package net.jalg.nioo.rs.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** NonceStore decorator that keeps a local Bloom filter of the nonces noted through it.
+ *
+ * This store keeps one Bloom filter per second of the clock skew window, sized for the
+ * expected request rate, and notes every nonce in it before passing it on to the exact
+ * store. It runs in one of two modes:
+ * <ul>
+ * <li>Shared: other nodes write to the exact store as well. The filters only know the
+ * nonces noted through this instance, so a miss proves nothing and is decided by the
+ * exact store. Only replays of nonces this node is still writing are rejected locally.
+ * This mode saves no round trips for new nonces.</li>
+ * <li>Single writer, selected by passing an Executor: this instance is the only writer
+ * of the exact store, for example because the store is local to the node or partitioned
+ * by Hawk ID. A miss is then answered locally and the nonce is written to the exact store
+ * on the executor, so new nonces cost no round trip. Only possible hits, that is replays
+ * and false positives, are decided by the exact store.</li>
+ * </ul>
+ * Nonces noted before a restart are not in the filters. A single writer therefore only
+ * answers misses locally for timestamps after the clock skew window around its first
+ * use, because older timestamps may have been noted by its predecessor. Until then it
+ * behaves like a shared store.
+ * <p>
+ * Like {@link InMemoryNonceStore}, whole filters are dropped as their second leaves the
+ * window, and nonces with timestamps outside the window are reported as used.
+ */
+public class BloomFilterNonceStore implements NonceStore {
+
+    private static final int LOCK_STRIPES = 256;
+
+    private final NonceStore exact;
+
+    private final SecondRing<Filter> filters;
+
+    private final int allowedClockSkew;
+
+    private final Executor writer;
+
+    private volatile HawkClock clock = HawkClock.SYSTEM;
+
+    /*
+     * First timestamp for which a single writer answers Bloom filter misses locally,
+     * or 0 before the first use.
+     */
+    private volatile long authoritativeFrom;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /*
+     * Nonces that have been added to a Bloom filter but whose write to the exact
+     * store has not completed yet. A replay arriving in the meantime finds its
+     * nonce here instead of in the exact store.
+     */
+    private final ConcurrentMap<String, Boolean> inFlight = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * Create a new store.
+     *
+     * @param exact The store to ask for possible hits and to note all nonces with.
+     * @param allowedClockSkew The allowed clock skew in seconds, usually the value of
+     *                         HawkServerProvider.getAllowedClockSkew(). Must be greater than 0.
+     * @param expectedRequestsPerSecond The number of nonces per second the filters are sized for.
+     * @param falsePositiveRate The desired fraction of new nonces that are looked up in the exact
+     *                          store at the expected request rate, for example 0.01.
+     */
+    public BloomFilterNonceStore(NonceStore exact, int allowedClockSkew, int expectedRequestsPerSecond,
+                                 double falsePositiveRate) {
+        this(exact, allowedClockSkew, expectedRequestsPerSecond, falsePositiveRate, null);
+    }
+
+    /**
+     * Create a new store that is the only writer of the exact store.
+     *
+     * @param exact The store to ask for possible hits and to note all nonces with. No other
+     *              node or store instance must write to it.
+     * @param allowedClockSkew The allowed clock skew in seconds, usually the value of
+     *                         HawkServerProvider.getAllowedClockSkew(). Must be greater than 0.
+     * @param expectedRequestsPerSecond The number of nonces per second the filters are sized for.
+     * @param falsePositiveRate The desired fraction of new nonces that are looked up in the exact
+     *                          store at the expected request rate, for example 0.01.
+     * @param writer Executor to write new nonces to the exact store with, for example a single
+     *               daemon thread. Null selects the shared mode. Nonces are written on the calling
+     *               thread if the executor rejects them.
+     */
+    public BloomFilterNonceStore(NonceStore exact, int allowedClockSkew, int expectedRequestsPerSecond,
+                                 double falsePositiveRate, Executor writer) {
+        if (expectedRequestsPerSecond <= 0 || falsePositiveRate <= 0.0 || falsePositiveRate >= 1.0) {
+            throw new IllegalArgumentException("Invalid request rate or false positive rate");
+        }
+        this.exact = exact;
+        this.allowedClockSkew = allowedClockSkew;
+        this.writer = writer;
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-expectedRequestsPerSecond * Math.log(falsePositiveRate) / (ln2 * ln2));
+        final int bits = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64L, (m + 63) & ~63L));
+        final int hashes = Math.max(1, (int) Math.round((double) bits / expectedRequestsPerSecond * ln2));
+        this.filters = new SecondRing<Filter>(allowedClockSkew, new SecondRing.Factory<Filter>() {
+            @Override
+            public Filter create(long ts) {
+                return new Filter(bits, hashes);
+            }
+        });
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Set the clock that decides which timestamps are inside the window. The default is
+     * {@link HawkClock#SYSTEM}.
+     *
+     * @param clock
+     */
+    public void setClock(HawkClock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public void noteNonce(String id, long ts, String nonce) {
+        long now = clock.currentTimeMillis() / 1000L;
+        Filter filter = filters.getOrCreate(ts, now);
+        if (filter != null) {
+            long hash = hash(id, nonce);
+            synchronized (locks[stripe(hash)]) {
+                filter.add(hash);
+            }
+            if (isAuthoritative(ts, now)) {
+                String key = key(id, ts, nonce);
+                inFlight.put(key, Boolean.TRUE);
+                writeBehind(id, ts, nonce, key);
+                return;
+            }
+        }
+        exact.noteNonce(id, ts, nonce);
+    }
+
+    @Override
+    public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) throws HawkProviderException {
+        long now = clock.currentTimeMillis() / 1000L;
+        if (!filters.isInWindow(ts, now)) {
+            return true;
+        }
+        Filter filter = filters.get(ts);
+        boolean possibleHit = filter != null && filter.mightContain(hash(id, nonce));
+        if (possibleHit && inFlight.containsKey(key(id, ts, nonce))) {
+            return true;
+        }
+        if (!possibleHit && isAuthoritative(ts, now)) {
+            return false;
+        }
+        return exact.nonceHasBeenUsedBefore(id, ts, nonce);
+    }
+
+    @Override
+    public boolean noteNonceIfAbsent(String id, long ts, String nonce) throws HawkProviderException {
+        long now = clock.currentTimeMillis() / 1000L;
+        Filter filter = filters.getOrCreate(ts, now);
+        if (filter == null) {
+            return false;
+        }
+        long hash = hash(id, nonce);
+        String key = key(id, ts, nonce);
+        boolean possibleHit;
+        synchronized (locks[stripe(hash)]) {
+            possibleHit = filter.mightContain(hash);
+            if (!possibleHit) {
+                filter.add(hash);
+                inFlight.put(key, Boolean.TRUE);
+            }
+        }
+        if (possibleHit) {
+            return !inFlight.containsKey(key) && exact.noteNonceIfAbsent(id, ts, nonce);
+        }
+        if (isAuthoritative(ts, now)) {
+            writeBehind(id, ts, nonce, key);
+            return true;
+        }
+        /*
+         * A miss only means that the nonce has not been noted through this instance.
+         * The exact store decides, and the write is needed anyway.
+         */
+        try {
+            return exact.noteNonceIfAbsent(id, ts, nonce);
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+
+    /**
+     * Check whether a Bloom filter miss for the timestamp proves that the nonce is new.
+     */
+    private boolean isAuthoritative(long ts, long now) {
+        if (writer == null) {
+            return false;
+        }
+        long from = authoritativeFrom;
+        if (from == 0L) {
+            from = now + allowedClockSkew + SecondRing.WINDOW_SLACK + 1;
+            authoritativeFrom = from;
+        }
+        return ts >= from;
+    }
+
+    /**
+     * Write a nonce that is in flight to the exact store on the writer.
+     */
+    private void writeBehind(final String id, final long ts, final String nonce, final String key) {
+        Runnable write = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    exact.noteNonce(id, ts, nonce);
+                } finally {
+                    inFlight.remove(key);
+                }
+            }
+        };
+        try {
+            writer.execute(write);
+        } catch (RejectedExecutionException e) {
+            write.run();
+        }
+    }
+
+    private static int stripe(long hash) {
+        return (int) (hash >>> 56) & (LOCK_STRIPES - 1);
+    }
+
+    private static String key(String id, long ts, String nonce) {
+        return id + '\n' + ts + '\n' + nonce;
+    }
+
+    private static long hash(String id, String nonce) {
+        return Fnv64.finish(Fnv64.update(Fnv64.update(Fnv64.update(Fnv64.OFFSET_BASIS, id), '\n'), nonce));
+    }
+
+    /**
+     * Bloom filter for the nonces of one second, using double hashing to derive
+     * the bit positions from one 64 bit hash.
+     */
+    private static final class Filter {
+        private final AtomicLongArray words;
+        private final int bits;
+        private final int hashes;
+
+        private Filter(int bits, int hashes) {
+            this.words = new AtomicLongArray(bits / 64);
+            this.bits = bits;
+            this.hashes = hashes;
+        }
+
+        private boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void add(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+                int word = bit >>> 6;
+                long mask = 1L << bit;
+                long value;
+                while (((value = words.get(word)) & mask) == 0) {
+                    if (words.compareAndSet(word, value, value | mask)) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+}
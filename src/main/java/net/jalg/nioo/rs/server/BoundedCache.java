@@ -0,0 +1,200 @@
+package net.jalg.nioo.rs.server;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** Size-bounded map with sampled eviction, shared by the caches of this package.
+ *
+ * Reads go to a ConcurrentHashMap without locking. Besides the map, the cache keeps its
+ * entries in an array so that eviction can pick entries at random instead of taking the
+ * first few in the map's iteration order, which always favours the same hash buckets.
+ * When an insert makes the cache exceed its maximum size, a random sample of entries, or
+ * all of them if there are no more than the sample size, is examined: the expired ones
+ * among them are removed or, if none has expired, the one with the lowest
+ * {@link Entry#evictionRank()}.
+ * <p>
+ * Writes and evictions are serialized by one lock. They happen on cache misses, which
+ * are much more expensive than taking the lock.
+ */
+final class BoundedCache<K, V extends BoundedCache.Entry> {
+
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int maxSize;
+
+    private final ConcurrentMap<K, V> map;
+
+    private final Object lock = new Object();
+
+    private final Random random = new Random();
+
+    private Object[] keys;
+
+    private Entry[] entries;
+
+    private int count;
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxSize Maximum number of entries. Must be greater than 0.
+     */
+    BoundedCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxSize = maxSize;
+        int capacity = Math.min(maxSize + 1, INITIAL_CAPACITY);
+        this.map = new ConcurrentHashMap<K, V>(capacity, 0.75f, Runtime.getRuntime().availableProcessors());
+        this.keys = new Object[capacity];
+        this.entries = new Entry[capacity];
+    }
+
+    V get(K key) {
+        return map.get(key);
+    }
+
+    /**
+     * Add an entry unless there is one for the key already, evicting entries if the
+     * cache grows beyond its maximum size.
+     *
+     * @param now Current time, in the unit of {@link Entry#isExpired(long)}.
+     * @return The existing entry or null if the entry has been added.
+     */
+    V putIfAbsent(K key, V value, long now) {
+        synchronized (lock) {
+            V existing = map.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            map.put(key, value);
+            add(key, value);
+            if (count > maxSize) {
+                evict(now);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Add or replace an entry, evicting entries if the cache grows beyond its maximum size.
+     *
+     * @param now Current time, in the unit of {@link Entry#isExpired(long)}.
+     */
+    void put(K key, V value, long now) {
+        synchronized (lock) {
+            V old = map.put(key, value);
+            if (old != null) {
+                value.index = old.index;
+                entries[old.index] = value;
+                old.index = -1;
+                return;
+            }
+            add(key, value);
+            if (count > maxSize) {
+                evict(now);
+            }
+        }
+    }
+
+    /**
+     * Remove an entry if it is still the one cached for the key.
+     */
+    void remove(K key, V value) {
+        synchronized (lock) {
+            if (map.remove(key, value)) {
+                removeAt(value.index);
+            }
+        }
+    }
+
+    void clear() {
+        synchronized (lock) {
+            map.clear();
+            Arrays.fill(keys, 0, count, null);
+            Arrays.fill(entries, 0, count, null);
+            count = 0;
+        }
+    }
+
+    int size() {
+        synchronized (lock) {
+            return count;
+        }
+    }
+
+    private void add(K key, V value) {
+        if (count == entries.length) {
+            int capacity = (int) Math.min((long) maxSize + 1, 2L * entries.length);
+            keys = Arrays.copyOf(keys, capacity);
+            entries = Arrays.copyOf(entries, capacity);
+        }
+        keys[count] = key;
+        entries[count] = value;
+        value.index = count;
+        count++;
+    }
+
+    private void removeAt(int index) {
+        int last = --count;
+        if (index != last) {
+            keys[index] = keys[last];
+            entries[index] = entries[last];
+            entries[index].index = index;
+        }
+        keys[last] = null;
+        entries[last] = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void evict(long now) {
+        Entry victim = null;
+        boolean removedExpired = false;
+        /*
+         * Small caches are examined completely. Walking down keeps the swap in
+         * removeAt() from moving an unexamined entry into a visited position.
+         */
+        boolean all = count <= EVICTION_SAMPLE_SIZE;
+        for (int i = Math.min(count, EVICTION_SAMPLE_SIZE) - 1; i >= 0; i--) {
+            int index = all ? i : random.nextInt(count);
+            Entry e = entries[index];
+            if (e.isExpired(now)) {
+                map.remove((K) keys[index], e);
+                removeAt(index);
+                removedExpired = true;
+            } else if (victim == null || e.evictionRank() < victim.evictionRank()) {
+                victim = e;
+            }
+        }
+        if (!removedExpired && victim != null) {
+            map.remove((K) keys[victim.index], victim);
+            removeAt(victim.index);
+        }
+    }
+
+    /**
+     * Base class of cached values.
+     */
+    abstract static class Entry {
+
+        int index = -1;
+
+        /**
+         * @return Entries with lower ranks are evicted first, for example the time of last access.
+         */
+        abstract long evictionRank();
+
+        /**
+         * @param now Current time as passed to the cache.
+         * @return True if the entry can be evicted before all others. False by default.
+         */
+        boolean isExpired(long now) {
+            return false;
+        }
+    }
+
+}
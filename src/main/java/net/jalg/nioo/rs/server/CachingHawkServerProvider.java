@@ -0,0 +1,308 @@
+package net.jalg.nioo.rs.server;
+
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** HawkServerProvider decorator that caches the credentials returned by another provider.
+ *
+ * Credentials are cached per (realm, id) for a configurable time. Entries that are
+ * accessed after the refresh time has passed are returned from the cache and reloaded
+ * in the background, so frequently used IDs never wait for the underlying provider.
+ * Lookups for unknown IDs are cached, too, but for a shorter time, so that requests
+ * with random IDs do not all reach the underlying provider.
+ * <p>
+ * The cache holds at most maxSize entries. When it grows beyond that, the least
+ * recently accessed entry of a small random sample of entries is evicted.
+ * <p>
+ * All other calls are passed to the underlying provider. Use {@link #create} to obtain
+ * an instance that is an {@link AtomicNonceHawkServerProvider} if the underlying provider
+ * is one. The wrapper is never an {@link AsyncHawkServerProvider}, so wrapping an
+ * asynchronous provider makes the filter use its blocking methods.
+ * <p>
+ * Call {@link #close()} to stop the refresh thread that the constructors without an
+ * Executor start.
+ */
+public class CachingHawkServerProvider implements HawkServerProvider, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(CachingHawkServerProvider.class.getName());
+
+    private final HawkServerProvider delegate;
+
+    private final long expireAfterMillis;
+
+    private final long refreshAfterMillis;
+
+    private final long negativeExpireAfterMillis;
+
+    private final Executor refreshExecutor;
+
+    private final ExecutorService ownedExecutor;
+
+    private final BoundedCache<Key, Entry> cache;
+
+    private volatile HawkClock clock = HawkClock.SYSTEM;
+
+    /**
+     * Create a new caching provider with the defaults of
+     * {@link #CachingHawkServerProvider(HawkServerProvider, int, long)}.
+     *
+     * @return An {@link AtomicCachingHawkServerProvider} if delegate is an
+     *         {@link AtomicNonceHawkServerProvider}, a plain caching provider otherwise.
+     */
+    public static CachingHawkServerProvider create(HawkServerProvider delegate, int maxSize,
+                                                   long expireAfterMillis) {
+        if (delegate instanceof AtomicNonceHawkServerProvider) {
+            return new AtomicCachingHawkServerProvider((AtomicNonceHawkServerProvider) delegate, maxSize,
+                    expireAfterMillis);
+        }
+        return new CachingHawkServerProvider(delegate, maxSize, expireAfterMillis);
+    }
+
+    /**
+     * Create a new caching provider with the settings of
+     * {@link #CachingHawkServerProvider(HawkServerProvider, int, long, long, long, Executor)}.
+     *
+     * @return An {@link AtomicCachingHawkServerProvider} if delegate is an
+     *         {@link AtomicNonceHawkServerProvider}, a plain caching provider otherwise.
+     */
+    public static CachingHawkServerProvider create(HawkServerProvider delegate, int maxSize,
+                                                   long expireAfterMillis, long refreshAfterMillis,
+                                                   long negativeExpireAfterMillis, Executor refreshExecutor) {
+        if (delegate instanceof AtomicNonceHawkServerProvider) {
+            return new AtomicCachingHawkServerProvider((AtomicNonceHawkServerProvider) delegate, maxSize,
+                    expireAfterMillis, refreshAfterMillis, negativeExpireAfterMillis, refreshExecutor);
+        }
+        return new CachingHawkServerProvider(delegate, maxSize, expireAfterMillis, refreshAfterMillis,
+                negativeExpireAfterMillis, refreshExecutor);
+    }
+
+    /**
+     * Create a new caching provider that refreshes entries after three quarters of their
+     * lifetime, caches unknown IDs for at most five seconds and refreshes entries using a
+     * single daemon thread, which is stopped by {@link #close()}.
+     *
+     * @param delegate The provider to obtain credentials from.
+     * @param maxSize Maximum number of cached entries.
+     * @param expireAfterMillis Time after which cached credentials must be reloaded.
+     */
+    public CachingHawkServerProvider(HawkServerProvider delegate, int maxSize, long expireAfterMillis) {
+        this(delegate, maxSize, expireAfterMillis, createDefaultExecutor());
+    }
+
+    private CachingHawkServerProvider(HawkServerProvider delegate, int maxSize, long expireAfterMillis,
+                                      ExecutorService ownedExecutor) {
+        this(delegate, maxSize, expireAfterMillis, expireAfterMillis * 3 / 4,
+                Math.min(expireAfterMillis, 5000L), ownedExecutor, ownedExecutor);
+    }
+
+    /**
+     * Create a new caching provider.
+     *
+     * @param delegate The provider to obtain credentials from.
+     * @param maxSize Maximum number of cached entries.
+     * @param expireAfterMillis Time after which cached credentials must be reloaded.
+     * @param refreshAfterMillis Time after which cached credentials are reloaded in the background
+     *                           when they are accessed.
+     * @param negativeExpireAfterMillis Time for which unknown IDs are cached.
+     * @param refreshExecutor Executor to run background reloads. It is not shut down by
+     *                        {@link #close()}.
+     */
+    public CachingHawkServerProvider(HawkServerProvider delegate, int maxSize, long expireAfterMillis,
+                                     long refreshAfterMillis, long negativeExpireAfterMillis,
+                                     Executor refreshExecutor) {
+        this(delegate, maxSize, expireAfterMillis, refreshAfterMillis, negativeExpireAfterMillis,
+                refreshExecutor, null);
+    }
+
+    private CachingHawkServerProvider(HawkServerProvider delegate, int maxSize, long expireAfterMillis,
+                                      long refreshAfterMillis, long negativeExpireAfterMillis,
+                                      Executor refreshExecutor, ExecutorService ownedExecutor) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be greater than 0, got " + maxSize);
+        }
+        this.delegate = delegate;
+        this.expireAfterMillis = expireAfterMillis;
+        this.refreshAfterMillis = refreshAfterMillis;
+        this.negativeExpireAfterMillis = negativeExpireAfterMillis;
+        this.refreshExecutor = refreshExecutor;
+        this.ownedExecutor = ownedExecutor;
+        this.cache = new BoundedCache<Key, Entry>(maxSize);
+    }
+
+    /**
+     * Set the clock that the age of cached credentials is measured with. The default is
+     * {@link HawkClock#SYSTEM}.
+     *
+     * @param clock
+     */
+    public void setClock(HawkClock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public HawkCredentials getHawkCredentials(String realm, String id) throws HawkProviderException {
+        Key key = new Key(realm, id);
+        long now = clock.currentTimeMillis();
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            long age = now - entry.loadedAt;
+            if (entry.credentials == null ? age < negativeExpireAfterMillis : age < expireAfterMillis) {
+                entry.lastAccess = now;
+                if (entry.credentials != null && age >= refreshAfterMillis) {
+                    scheduleRefresh(key, entry);
+                }
+                return entry.credentials;
+            }
+        }
+        return load(key);
+    }
+
+    /**
+     * Remove the cached credentials for the given ID.
+     *
+     * @param realm The protection space (can be null)
+     * @param id The id of the credentials
+     */
+    public void invalidate(String realm, String id) {
+        Key key = new Key(realm, id);
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            cache.remove(key, entry);
+        }
+    }
+
+    /**
+     * Remove all cached credentials.
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    @Override
+    public int getConfiguredValidationPort() {
+        return delegate.getConfiguredValidationPort();
+    }
+
+    @Override
+    public String getConfiguredValidationHost() {
+        return delegate.getConfiguredValidationHost();
+    }
+
+    @Override
+    public int getAllowedClockSkew() {
+        return delegate.getAllowedClockSkew();
+    }
+
+    @Override
+    public void noteNonce(String id, long ts, String nonce) {
+        delegate.noteNonce(id, ts, nonce);
+    }
+
+    @Override
+    public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) throws HawkProviderException {
+        return delegate.nonceHasBeenUsedBefore(id, ts, nonce);
+    }
+
+    /**
+     * Stop the refresh thread if this provider started it. Entries due for a refresh
+     * are then served from the cache until they expire.
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdownNow();
+        }
+    }
+
+    private HawkCredentials load(Key key) throws HawkProviderException {
+        HawkCredentials credentials = delegate.getHawkCredentials(key.realm, key.id);
+        long now = clock.currentTimeMillis();
+        cache.put(key, new Entry(credentials, now), now);
+        return credentials;
+    }
+
+    private void scheduleRefresh(final Key key, final Entry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        load(key);
+                    } catch (HawkProviderException e) {
+                        LOG.log(Level.WARNING, "Unable to refresh hawk credentials for Hawk ID: " + key.id, e);
+                        entry.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "hawk-credentials-refresh");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private static final class Key {
+        private final String realm;
+        private final String id;
+
+        private Key(String realm, String id) {
+            this.realm = realm;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return id.equals(other.id) && (realm == null ? other.realm == null : realm.equals(other.realm));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (realm == null ? 0 : realm.hashCode()) + id.hashCode();
+        }
+    }
+
+    private static final class Entry extends BoundedCache.Entry {
+        private final HawkCredentials credentials;
+        private final long loadedAt;
+        private volatile long lastAccess;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(HawkCredentials credentials, long loadedAt) {
+            this.credentials = credentials;
+            this.loadedAt = loadedAt;
+            this.lastAccess = loadedAt;
+        }
+
+        @Override
+        long evictionRank() {
+            return lastAccess;
+        }
+    }
+
+}
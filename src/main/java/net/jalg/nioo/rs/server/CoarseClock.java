@@ -0,0 +1,118 @@
+package net.jalg.nioo.rs.server;
+
+import java.io.Closeable;
+
+/** Clock that reads the system time in a background thread at a fixed resolution.
+ *
+ * Reading this clock is a volatile read. Hawk timestamps have a resolution of one
+ * second and are checked against a clock skew of usually a minute, so a resolution of
+ * {@link #DEFAULT_RESOLUTION_MILLIS} is far more than the filter needs.
+ * <p>
+ * Filters created by a {@link HawkFeature} without a clock of its own share one clock
+ * with the default resolution. It is started when the first such feature configures a
+ * method and stopped by {@link HawkFeature#close()} of the last one.
+ */
+public class CoarseClock implements HawkClock, Closeable {
+
+    public static final long DEFAULT_RESOLUTION_MILLIS = 100;
+
+    private static CoarseClock defaultClock;
+
+    private static int defaultClockUsers;
+
+    private final long resolutionMillis;
+
+    private final boolean shared;
+
+    private final Thread ticker;
+
+    private volatile long now = System.currentTimeMillis();
+
+    private volatile boolean closed;
+
+    /**
+     * Create a new clock and start its background thread.
+     *
+     * @param resolutionMillis Interval between readings of the system time.
+     */
+    public CoarseClock(long resolutionMillis) {
+        this(resolutionMillis, false);
+    }
+
+    private CoarseClock(long resolutionMillis, boolean shared) {
+        if (resolutionMillis <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive");
+        }
+        this.resolutionMillis = resolutionMillis;
+        this.shared = shared;
+        this.ticker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, "hawk-coarse-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * Get the shared clock, starting it if it is not running. Every call must be
+     * matched by a call to {@link #releaseDefault()}.
+     *
+     * @return A clock with the default resolution.
+     */
+    static synchronized HawkClock acquireDefault() {
+        if (defaultClock == null) {
+            defaultClock = new CoarseClock(DEFAULT_RESOLUTION_MILLIS, true);
+        }
+        defaultClockUsers++;
+        return defaultClock;
+    }
+
+    /**
+     * Give up a reference obtained from {@link #acquireDefault()} and stop the shared
+     * clock when it has no users left.
+     */
+    static synchronized void releaseDefault() {
+        if (defaultClockUsers > 0 && --defaultClockUsers == 0) {
+            defaultClock.stop();
+            defaultClock = null;
+        }
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    /**
+     * Stop the background thread. The clock then keeps returning its last reading.
+     *
+     * @throws UnsupportedOperationException If this is the clock shared by the filters
+     *         of HawkFeature, which is stopped by HawkFeature.close().
+     */
+    @Override
+    public void close() {
+        if (shared) {
+            throw new UnsupportedOperationException("The shared clock is stopped by HawkFeature.close()");
+        }
+        stop();
+    }
+
+    private void stop() {
+        closed = true;
+        ticker.interrupt();
+    }
+
+    private void tick() {
+        while (!closed) {
+            now = System.currentTimeMillis();
+            try {
+                Thread.sleep(resolutionMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package net.jalg.nioo.rs.server;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/** AsyncHawkServerProvider that runs the calls of a blocking HawkServerProvider on an
+ * ExecutorService.
+ *
+ * This allows the filter to overlap credential lookup and nonce checking for providers
+ * that only offer a blocking API. Nonces are only noted atomically if the delegate is an
+ * {@link AtomicNonceHawkServerProvider}; otherwise check and note are two calls, as with
+ * a plain provider, and the filter skips its early nonce check so that each request
+ * still makes only those two calls.
+ */
+public class ExecutorAsyncHawkServerProvider implements AsyncHawkServerProvider {
+
+    private final HawkServerProvider delegate;
+
+    private final ExecutorService executor;
+
+    /**
+     * Create a new provider.
+     *
+     * @param delegate The blocking provider.
+     * @param executor The executor to run the provider calls on.
+     */
+    public ExecutorAsyncHawkServerProvider(HawkServerProvider delegate, ExecutorService executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public Future<HawkCredentials> getHawkCredentialsAsync(final String realm, final String id) {
+        return executor.submit(new Callable<HawkCredentials>() {
+            @Override
+            public HawkCredentials call() throws HawkProviderException {
+                return delegate.getHawkCredentials(realm, id);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> nonceHasBeenUsedBeforeAsync(final String id, final long ts, final String nonce) {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws HawkProviderException {
+                return delegate.nonceHasBeenUsedBefore(id, ts, nonce);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> noteNonceIfAbsentAsync(final String id, final long ts, final String nonce) {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws HawkProviderException {
+                if (delegate instanceof AtomicNonceHawkServerProvider) {
+                    return ((AtomicNonceHawkServerProvider) delegate).noteNonceIfAbsent(id, ts, nonce);
+                }
+                if (delegate.nonceHasBeenUsedBefore(id, ts, nonce)) {
+                    return false;
+                }
+                delegate.noteNonce(id, ts, nonce);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return true if the delegate checks and notes nonces in one call.
+     */
+    boolean hasAtomicDelegate() {
+        return delegate instanceof AtomicNonceHawkServerProvider;
+    }
+
+    @Override
+    public int getConfiguredValidationPort() {
+        return delegate.getConfiguredValidationPort();
+    }
+
+    @Override
+    public String getConfiguredValidationHost() {
+        return delegate.getConfiguredValidationHost();
+    }
+
+    @Override
+    public int getAllowedClockSkew() {
+        return delegate.getAllowedClockSkew();
+    }
+
+    @Override
+    public HawkCredentials getHawkCredentials(String realm, String id) throws HawkProviderException {
+        return delegate.getHawkCredentials(realm, id);
+    }
+
+    @Override
+    public void noteNonce(String id, long ts, String nonce) {
+        delegate.noteNonce(id, ts, nonce);
+    }
+
+    @Override
+    public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) throws HawkProviderException {
+        return delegate.nonceHasBeenUsedBefore(id, ts, nonce);
+    }
+
+}
@@ -0,0 +1,181 @@
+package net.jalg.nioo.rs.server;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Limits authentication attempts of Hawk IDs and client addresses with many recent failures.
+ *
+ * Every request with an unknown ID or an invalid MAC costs a credential lookup and an
+ * HMAC calculation. The filter reports these failures to the limiter and rejects further
+ * requests of the same ID or address before doing either once a threshold is reached.
+ * <p>
+ * Failures are counted in a count-min sketch, so memory use is fixed regardless of how
+ * many distinct IDs or addresses are seen. Counts may be overestimated but never
+ * underestimated. The hash functions are seeded randomly so that attackers cannot
+ * choose IDs that collide with those of legitimate clients. Failures are counted for the
+ * current and the previous time window, so a blocked ID or address is released between
+ * one and two windows after its last failures.
+ */
+public class FailureLimiter {
+
+    private static final int DEPTH = 4;
+
+    private final int maxFailuresPerId;
+
+    private final int maxFailuresPerAddress;
+
+    private final long windowMillis;
+
+    private final int mask;
+
+    private final long idSeed;
+
+    private final long addressSeed;
+
+    private final AtomicLong windowStart = new AtomicLong();
+
+    private volatile Windows windows;
+
+    private volatile HawkClock clock = HawkClock.SYSTEM;
+
+    /**
+     * Create a limiter with a sketch width of 4096 counters per row.
+     *
+     * @param maxFailuresPerId Number of failures after which an ID is blocked or 0 to not limit IDs.
+     * @param maxFailuresPerAddress Number of failures after which an address is blocked or 0 to not limit addresses.
+     * @param windowMillis Length of the window in which failures are counted.
+     */
+    public FailureLimiter(int maxFailuresPerId, int maxFailuresPerAddress, long windowMillis) {
+        this(maxFailuresPerId, maxFailuresPerAddress, windowMillis, 4096);
+    }
+
+    /**
+     * Create a limiter.
+     *
+     * @param maxFailuresPerId Number of failures after which an ID is blocked or 0 to not limit IDs.
+     * @param maxFailuresPerAddress Number of failures after which an address is blocked or 0 to not limit addresses.
+     * @param windowMillis Length of the window in which failures are counted.
+     * @param width Counters per row of the sketch, rounded up to a power of two. Wider sketches
+     *              overestimate less often.
+     */
+    public FailureLimiter(int maxFailuresPerId, int maxFailuresPerAddress, long windowMillis, int width) {
+        if (windowMillis <= 0 || width <= 0) {
+            throw new IllegalArgumentException("Window and width must be positive");
+        }
+        this.maxFailuresPerId = maxFailuresPerId;
+        this.maxFailuresPerAddress = maxFailuresPerAddress;
+        this.windowMillis = windowMillis;
+        int w = Integer.highestOneBit(width);
+        if (w < width) {
+            w <<= 1;
+        }
+        this.mask = w - 1;
+        SecureRandom random = new SecureRandom();
+        this.idSeed = random.nextLong();
+        this.addressSeed = random.nextLong();
+        this.windows = new Windows(new AtomicIntegerArray(DEPTH * w), new AtomicIntegerArray(DEPTH * w));
+    }
+
+    /**
+     * Set the clock that failure windows are measured with. The default is
+     * {@link HawkClock#SYSTEM}.
+     *
+     * @param clock
+     */
+    public void setClock(HawkClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Get the number of seconds after which a blocked client may retry.
+     *
+     * @return The retry delay in seconds.
+     */
+    int getRetryAfterSeconds() {
+        return (int) Math.max(1L, (windowMillis + 999L) / 1000L);
+    }
+
+    /**
+     * Check whether requests for the given ID or from the given address are blocked.
+     *
+     * @param id The Hawk ID or null.
+     * @param address The client address or null if unknown.
+     * @return true if the ID or the address has too many recent failures.
+     */
+    boolean isBlocked(String id, String address) {
+        Windows w = rotate();
+        if (id != null && maxFailuresPerId > 0 && estimate(w, id, idSeed) >= maxFailuresPerId) {
+            return true;
+        }
+        return address != null && maxFailuresPerAddress > 0
+                && estimate(w, address, addressSeed) >= maxFailuresPerAddress;
+    }
+
+    /**
+     * Count a failed authentication attempt.
+     *
+     * @param id The Hawk ID or null.
+     * @param address The client address or null if unknown.
+     */
+    void recordFailure(String id, String address) {
+        AtomicIntegerArray c = rotate().current;
+        if (id != null && maxFailuresPerId > 0) {
+            increment(c, id, idSeed);
+        }
+        if (address != null && maxFailuresPerAddress > 0) {
+            increment(c, address, addressSeed);
+        }
+    }
+
+    /**
+     * Start a new window if the current one has ended. Failures recorded concurrently
+     * with the rotation may be lost, which only makes the limiter slightly more lenient.
+     */
+    private Windows rotate() {
+        long start = windowStart.get();
+        long now = clock.currentTimeMillis();
+        if (now - start >= windowMillis && windowStart.compareAndSet(start, now)) {
+            Windows w = windows;
+            int length = w.current.length();
+            windows = new Windows(new AtomicIntegerArray(length),
+                    now - start < 2 * windowMillis ? w.current : new AtomicIntegerArray(length));
+        }
+        return windows;
+    }
+
+    private int estimate(Windows w, String key, long seed) {
+        long hash = Fnv64.finish(Fnv64.update(seed, key));
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * (mask + 1) + ((h1 + row * h2) & mask);
+            min = Math.min(min, w.current.get(index) + w.previous.get(index));
+        }
+        return min;
+    }
+
+    private void increment(AtomicIntegerArray c, String key, long seed) {
+        long hash = Fnv64.finish(Fnv64.update(seed, key));
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * (mask + 1) + ((h1 + row * h2) & mask);
+            if (c.get(index) < Integer.MAX_VALUE) {
+                c.incrementAndGet(index);
+            }
+        }
+    }
+
+    private static final class Windows {
+        private final AtomicIntegerArray current;
+        private final AtomicIntegerArray previous;
+
+        private Windows(AtomicIntegerArray current, AtomicIntegerArray previous) {
+            this.current = current;
+            this.previous = previous;
+        }
+    }
+
+}
@@ -0,0 +1,328 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/** HawkServerProvider that serves credentials from a local file.
+ *
+ * The file contains one set of credentials per line, with whitespace separated fields:
+ * <pre>
+ * # id        algorithm  key                  [user   [role,role,...]]
+ * dh37fgj492je sha256    werxhqb98rpaxn39848x  alice  admin,user
+ * </pre>
+ * If the user is omitted, the ID is used as the principal name. Empty lines and lines
+ * starting with '#' are ignored. The same credentials are returned for all realms.
+ * <p>
+ * The credentials are loaded into an immutable open addressing index. Lookups do not
+ * lock and do not allocate. When the file has changed, a new index is built on a
+ * background thread and then swapped in, so request threads never wait for a reload.
+ * If the changed file cannot be read, the previous credentials stay in use.
+ * <p>
+ * Nonces are checked and noted with the given NonceStore.
+ */
+public class FileHawkServerProvider implements AtomicNonceHawkServerProvider {
+
+    private static final Logger LOG = Logger.getLogger(FileHawkServerProvider.class.getName());
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final File file;
+
+    private final NonceStore nonceStore;
+
+    private final int allowedClockSkew;
+
+    private final ScheduledExecutorService reloadExecutor;
+
+    private volatile Index index;
+
+    private long loadedLastModified;
+
+    private long loadedLength;
+
+    /**
+     * Create a provider that loads the file once. Call {@link #reload()} to pick up changes.
+     *
+     * @param file The credentials file.
+     * @param nonceStore The store for used nonces.
+     * @param allowedClockSkew The allowed clock skew in seconds, which must match that of the nonce store.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public FileHawkServerProvider(File file, NonceStore nonceStore, int allowedClockSkew) throws IOException {
+        this(file, nonceStore, allowedClockSkew, 0L);
+    }
+
+    /**
+     * Create a provider that checks the file for changes in the given interval and reloads it
+     * on a daemon thread.
+     *
+     * @param file The credentials file.
+     * @param nonceStore The store for used nonces.
+     * @param allowedClockSkew The allowed clock skew in seconds, which must match that of the nonce store.
+     * @param checkIntervalMillis Interval for checking the file's modification time or 0 to not check.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public FileHawkServerProvider(File file, NonceStore nonceStore, int allowedClockSkew,
+                                  long checkIntervalMillis) throws IOException {
+        this.file = file;
+        this.nonceStore = nonceStore;
+        this.allowedClockSkew = allowedClockSkew;
+        reload();
+        if (checkIntervalMillis > 0) {
+            reloadExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "hawk-credentials-reload");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            reloadExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    reloadIfModified();
+                }
+            }, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            reloadExecutor = null;
+        }
+    }
+
+    /**
+     * Load the file and replace the current credentials with its contents.
+     *
+     * @throws IOException If the file cannot be read or is malformed. The current credentials
+     *                     are kept in this case.
+     */
+    public synchronized void reload() throws IOException {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        index = load(file);
+        loadedLastModified = lastModified;
+        loadedLength = length;
+    }
+
+    /**
+     * Get the number of loaded credentials.
+     *
+     * @return Number of credentials.
+     */
+    public int size() {
+        return index.size;
+    }
+
+    /**
+     * Stop checking the file for changes.
+     */
+    public void close() {
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+        }
+    }
+
+    private synchronized void reloadIfModified() {
+        if (file.lastModified() == loadedLastModified && file.length() == loadedLength) {
+            return;
+        }
+        try {
+            reload();
+            LOG.log(Level.INFO, "Reloaded {0} Hawk credentials from {1}", new Object[]{index.size, file});
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Unable to reload Hawk credentials from " + file + ", keeping previous credentials", e);
+        }
+    }
+
+    @Override
+    public int getConfiguredValidationPort() {
+        return -1;
+    }
+
+    @Override
+    public String getConfiguredValidationHost() {
+        return null;
+    }
+
+    @Override
+    public int getAllowedClockSkew() {
+        return allowedClockSkew;
+    }
+
+    @Override
+    public HawkCredentials getHawkCredentials(String realm, String id) {
+        return index.get(id);
+    }
+
+    @Override
+    public void noteNonce(String id, long ts, String nonce) {
+        nonceStore.noteNonce(id, ts, nonce);
+    }
+
+    @Override
+    public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) throws HawkProviderException {
+        return nonceStore.nonceHasBeenUsedBefore(id, ts, nonce);
+    }
+
+    @Override
+    public boolean noteNonceIfAbsent(String id, long ts, String nonce) throws HawkProviderException {
+        return nonceStore.noteNonceIfAbsent(id, ts, nonce);
+    }
+
+    private static Index load(File file) throws IOException {
+        List<FileCredentials> credentials = new ArrayList<FileCredentials>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0 || line.charAt(0) == '#') {
+                    continue;
+                }
+                credentials.add(parse(WHITESPACE.split(line), file, lineNumber));
+            }
+        } finally {
+            reader.close();
+        }
+        return new Index(credentials, file);
+    }
+
+    private static FileCredentials parse(String[] fields, File file, int lineNumber) throws IOException {
+        if (fields.length < 3 || fields.length > 5) {
+            throw new IOException(file + ":" + lineNumber + ": expected id, algorithm, key and optional user and roles");
+        }
+        Algorithm algorithm;
+        if ("sha256".equalsIgnoreCase(fields[1])) {
+            algorithm = Algorithm.SHA_256;
+        } else if ("sha1".equalsIgnoreCase(fields[1])) {
+            algorithm = Algorithm.SHA_1;
+        } else {
+            throw new IOException(file + ":" + lineNumber + ": unknown algorithm " + fields[1]);
+        }
+        String user = fields.length > 3 ? fields[3] : fields[0];
+        Set<String> roles = fields.length > 4
+                ? new HashSet<String>(Arrays.asList(fields[4].split(",")))
+                : Collections.<String>emptySet();
+        return new FileCredentials(fields[0], fields[2], algorithm, user, roles);
+    }
+
+    /**
+     * Immutable open addressing hash table from ID to credentials.
+     */
+    private static final class Index {
+        private final String[] ids;
+        private final FileCredentials[] credentials;
+        private final int mask;
+        private final int size;
+
+        private Index(List<FileCredentials> entries, File file) throws IOException {
+            int capacity = Integer.highestOneBit(Math.max(2, entries.size() * 2 - 1)) << 1;
+            ids = new String[capacity];
+            credentials = new FileCredentials[capacity];
+            mask = capacity - 1;
+            size = entries.size();
+            for (FileCredentials c : entries) {
+                int i = slot(c.id);
+                while (ids[i] != null) {
+                    if (ids[i].equals(c.id)) {
+                        throw new IOException(file + ": duplicate ID " + c.id);
+                    }
+                    i = (i + 1) & mask;
+                }
+                ids[i] = c.id;
+                credentials[i] = c;
+            }
+        }
+
+        private FileCredentials get(String id) {
+            int i = slot(id);
+            String candidate;
+            while ((candidate = ids[i]) != null) {
+                if (candidate.equals(id)) {
+                    return credentials[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        private int slot(String id) {
+            int h = id.hashCode();
+            h ^= (h >>> 16);
+            h *= 0x85ebca6b;
+            h ^= (h >>> 13);
+            return h & mask;
+        }
+    }
+
+    private static final class FileCredentials implements HawkCredentials, ProvidedUser {
+        private final String id;
+        private final String key;
+        private final Algorithm algorithm;
+        private final Principal principal;
+        private final Set<String> roles;
+
+        private FileCredentials(String id, String key, Algorithm algorithm, final String user, Set<String> roles) {
+            this.id = id;
+            this.key = key;
+            this.algorithm = algorithm;
+            this.principal = new Principal() {
+                @Override
+                public String getName() {
+                    return user;
+                }
+            };
+            this.roles = roles;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getPwd() {
+            return key;
+        }
+
+        @Override
+        public Algorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public ProvidedUser getProvidedUser() {
+            return this;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return principal;
+        }
+
+        @Override
+        public boolean isInRole(String role) {
+            return roles.contains(role);
+        }
+    }
+
+}
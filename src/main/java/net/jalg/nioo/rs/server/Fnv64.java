@@ -0,0 +1,48 @@
+package net.jalg.nioo.rs.server;
+
+/** 64 bit FNV-1a hashing with a final avalanche step, shared by the stores and sketches
+ * of this package.
+ *
+ * FNV-1a mixes the last input bytes poorly into the high bits, so {@link #finish(long)}
+ * applies the first half of the MurmurHash3 finalizer before the hash is used to pick
+ * slots or bits. Callers that must not let clients predict the hash start from a random
+ * seed instead of {@link #OFFSET_BASIS}.
+ */
+final class Fnv64 {
+
+    static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long PRIME = 0x100000001b3L;
+
+    private Fnv64() {
+    }
+
+    static long update(long h, char c) {
+        return (h ^ c) * PRIME;
+    }
+
+    static long update(long h, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Hash the eight bytes of a long, least significant byte first.
+     */
+    static long updateLong(long h, long value) {
+        for (int i = 0; i < 8; i++) {
+            h = (h ^ ((value >>> (i * 8)) & 0xff)) * PRIME;
+        }
+        return h;
+    }
+
+    static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
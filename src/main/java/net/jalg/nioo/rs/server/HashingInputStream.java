@@ -0,0 +1,125 @@
+package net.jalg.nioo.rs.server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/** InputStream that feeds all bytes read into a Hawk payload hash digest.
+ *
+ * The stream does not keep a copy of the data. Bytes that the consumer did not read
+ * are read and hashed when {@link #finish()} is called. Reading fails with a
+ * {@link PayloadTooLargeException} once more than the maximum size has been read.
+ */
+class HashingInputStream extends FilterInputStream {
+
+    private static final int DRAIN_BUFFER_SIZE = 4096;
+
+    private final MessageDigest digest;
+
+    private final long maxSize;
+
+    private long count;
+
+    /**
+     * Create a new stream without a size limit.
+     *
+     * @param in The stream to read from.
+     * @param digest Digest that has already been started using PayloadHash.
+     */
+    HashingInputStream(InputStream in, MessageDigest digest) {
+        this(in, digest, -1);
+    }
+
+    /**
+     * Create a new stream.
+     *
+     * @param in The stream to read from.
+     * @param digest Digest that has already been started using PayloadHash.
+     * @param maxSize Maximum number of bytes to read or a negative value for no limit.
+     */
+    HashingInputStream(InputStream in, MessageDigest digest, long maxSize) {
+        super(in);
+        this.digest = digest;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            count(1);
+            digest.update((byte) b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            count(n);
+            digest.update(b, off, n);
+        }
+        return n;
+    }
+
+    /**
+     * Check whether the maximum size has been exceeded.
+     *
+     * @return true if more than the maximum size has been read.
+     */
+    boolean isTooLarge() {
+        return maxSize >= 0 && count > maxSize;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, DRAIN_BUFFER_SIZE)];
+        long skipped = 0;
+        while (skipped < n) {
+            int r = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+            if (r < 0) {
+                break;
+            }
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void count(int n) throws PayloadTooLargeException {
+        count += n;
+        if (isTooLarge()) {
+            throw new PayloadTooLargeException(maxSize);
+        }
+    }
+
+    /**
+     * Hash any bytes not yet consumed and complete the hash calculation.
+     *
+     * @return The base64 encoded payload hash.
+     * @throws IOException
+     */
+    String finish() throws IOException {
+        byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+        while (read(buffer, 0, buffer.length) >= 0) {
+            ;
+        }
+        return PayloadHash.finish(digest);
+    }
+
+}
@@ -0,0 +1,197 @@
+package net.jalg.nioo.rs.server;
+
+/** Single-pass parser for Hawk Authorization request headers.
+ *
+ * Parsing records the offsets of the attribute values in the header string; strings are
+ * created only when a value is requested. Malformed headers are reported by returning
+ * null instead of throwing, so rejecting them does not allocate an exception either.
+ * <p>
+ * The header must have the form
+ * <pre>
+ * Hawk id="...", ts="...", nonce="...", hash="...", ext="...", mac="..."
+ * </pre>
+ * with id, ts, nonce and mac present and non-empty, every attribute at most once and
+ * values consisting of printable ASCII characters other than double quote and backslash.
+ * The optional app and dlg attributes are accepted but not retained. Callers are expected
+ * to cap the header length before parsing.
+ */
+final class HawkAuthorization {
+
+    private static final String SCHEME = "Hawk";
+
+    private static final String[] NAMES = {"id", "ts", "nonce", "hash", "ext", "mac", "app", "dlg"};
+
+    private static final int ID = 0;
+    private static final int TS = 1;
+    private static final int NONCE = 2;
+    private static final int HASH = 3;
+    private static final int EXT = 4;
+    private static final int MAC = 5;
+
+    private static final int REQUIRED = (1 << ID) | (1 << TS) | (1 << NONCE) | (1 << MAC);
+
+    private static final int MAX_TS_DIGITS = 18;
+
+    private final String header;
+
+    private int idStart, idEnd;
+    private int nonceStart, nonceEnd;
+    private int hashStart = -1, hashEnd;
+    private int extStart = -1, extEnd;
+    private int macStart, macEnd;
+    private long ts;
+
+    private HawkAuthorization(String header) {
+        this.header = header;
+    }
+
+    /**
+     * Parse a Hawk Authorization header.
+     *
+     * @param header The header value.
+     * @return The parsed header or null if the header is malformed.
+     */
+    static HawkAuthorization parse(String header) {
+        int len = header.length();
+        if (len <= SCHEME.length() || !header.regionMatches(true, 0, SCHEME, 0, SCHEME.length())
+                || header.charAt(SCHEME.length()) != ' ') {
+            return null;
+        }
+        HawkAuthorization a = new HawkAuthorization(header);
+        int seen = 0;
+        int i = skipSpaces(header, SCHEME.length(), len);
+        while (i < len) {
+            int keyStart = i;
+            while (i < len && header.charAt(i) >= 'a' && header.charAt(i) <= 'z') {
+                i++;
+            }
+            int field = field(header, keyStart, i);
+            if (field < 0 || (seen & (1 << field)) != 0) {
+                return null;
+            }
+            seen |= 1 << field;
+            if (i + 1 >= len || header.charAt(i) != '=' || header.charAt(i + 1) != '"') {
+                return null;
+            }
+            i += 2;
+            int valueStart = i;
+            while (i < len && isValueChar(header.charAt(i))) {
+                i++;
+            }
+            if (i == len || header.charAt(i) != '"') {
+                return null;
+            }
+            if (!a.set(field, valueStart, i)) {
+                return null;
+            }
+            i = skipSpaces(header, i + 1, len);
+            if (i < len) {
+                if (header.charAt(i) != ',') {
+                    return null;
+                }
+                i = skipSpaces(header, i + 1, len);
+            }
+        }
+        if ((seen & REQUIRED) != REQUIRED) {
+            return null;
+        }
+        return a;
+    }
+
+    String getId() {
+        return header.substring(idStart, idEnd);
+    }
+
+    long getTs() {
+        return ts;
+    }
+
+    String getNonce() {
+        return header.substring(nonceStart, nonceEnd);
+    }
+
+    /**
+     * @return The payload hash or null if the header does not contain one.
+     */
+    String getHash() {
+        return hashStart < 0 ? null : header.substring(hashStart, hashEnd);
+    }
+
+    /**
+     * @return The ext data or null if the header does not contain any.
+     */
+    String getExt() {
+        return extStart < 0 ? null : header.substring(extStart, extEnd);
+    }
+
+    String getMac() {
+        return header.substring(macStart, macEnd);
+    }
+
+    private boolean set(int field, int start, int end) {
+        switch (field) {
+            case ID:
+                idStart = start;
+                idEnd = end;
+                return end > start;
+            case TS:
+                return parseTs(start, end);
+            case NONCE:
+                nonceStart = start;
+                nonceEnd = end;
+                return end > start;
+            case HASH:
+                hashStart = start;
+                hashEnd = end;
+                return true;
+            case EXT:
+                extStart = start;
+                extEnd = end;
+                return true;
+            case MAC:
+                macStart = start;
+                macEnd = end;
+                return end > start;
+            default:
+                return true;
+        }
+    }
+
+    private boolean parseTs(int start, int end) {
+        if (end == start || end - start > MAX_TS_DIGITS) {
+            return false;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = header.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            value = value * 10 + (c - '0');
+        }
+        ts = value;
+        return true;
+    }
+
+    private static int field(String header, int start, int end) {
+        int length = end - start;
+        for (int f = 0; f < NAMES.length; f++) {
+            if (NAMES[f].length() == length && header.regionMatches(start, NAMES[f], 0, length)) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isValueChar(char c) {
+        return c >= ' ' && c <= '~' && c != '"' && c != '\\';
+    }
+
+    private static int skipSpaces(String header, int i, int len) {
+        while (i < len && header.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+}
@@ -0,0 +1,24 @@
+package net.jalg.nioo.rs.server;
+
+/** Source of the current time for timestamp checks.
+ */
+public interface HawkClock {
+
+    /**
+     * Clock that asks the system for every reading.
+     */
+    public static final HawkClock SYSTEM = new HawkClock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Get the current time.
+     *
+     * @return The current time in milliseconds since the epoch.
+     */
+    public long currentTimeMillis();
+
+}
@@ -0,0 +1,213 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+import net.jalg.hawkj.Util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Hawk MAC and hash calculation using per-thread JCA engines.
+ *
+ * Looking up and instantiating Mac and MessageDigest objects is comparatively expensive.
+ * This class keeps one MessageDigest per algorithm and a small LRU cache of keyed
+ * Mac instances per thread, so that hot credentials do not even need to re-initialize
+ * the key. The engines must only be used for calculations that complete on the calling
+ * thread.
+ */
+final class HawkCrypto {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAC_CACHE_SIZE = 32;
+
+    private static final String HEADER_PREFIX = "hawk.1.header\n";
+
+    private static final String BEWIT_PREFIX = "hawk.1.bewit\n";
+
+    private static final ThreadLocal<MessageDigest[]> DIGESTS = new ThreadLocal<MessageDigest[]>() {
+        @Override
+        protected MessageDigest[] initialValue() {
+            return new MessageDigest[Algorithm.values().length];
+        }
+    };
+
+    private static final ThreadLocal<Map<MacKey, Mac>> MACS = new ThreadLocal<Map<MacKey, Mac>>() {
+        @Override
+        protected Map<MacKey, Mac> initialValue() {
+            return new LinkedHashMap<MacKey, Mac>(MAC_CACHE_SIZE * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<MacKey, Mac> eldest) {
+                    return size() > MAC_CACHE_SIZE;
+                }
+            };
+        }
+    };
+
+    private HawkCrypto() {
+    }
+
+    /**
+     * Get the calling thread's MessageDigest for the given algorithm, reset and ready for use.
+     *
+     * @param algorithm
+     * @return A digest owned by the calling thread.
+     */
+    static MessageDigest digest(Algorithm algorithm) {
+        MessageDigest[] digests = DIGESTS.get();
+        MessageDigest digest = digests[algorithm.ordinal()];
+        if (digest == null) {
+            digest = PayloadHash.createDigest(algorithm);
+            digests[algorithm.ordinal()] = digest;
+        }
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * Get the calling thread's Mac for the given algorithm, initialized with the given key.
+     *
+     * @param algorithm
+     * @param key The Hawk key (password)
+     * @return A Mac owned by the calling thread.
+     */
+    static Mac mac(Algorithm algorithm, String key) {
+        Map<MacKey, Mac> macs = MACS.get();
+        MacKey macKey = new MacKey(algorithm, key);
+        Mac mac = macs.get(macKey);
+        if (mac == null) {
+            String name = macName(algorithm);
+            try {
+                mac = Mac.getInstance(name);
+                mac.init(new SecretKeySpec(key.getBytes(UTF_8), name));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to create MAC for " + algorithm, e);
+            }
+            macs.put(macKey, mac);
+        }
+        return mac;
+    }
+
+    /**
+     * Calculate the base64 encoded HMAC of the given normalized string.
+     *
+     * @param algorithm
+     * @param key The Hawk key (password)
+     * @param normalized The normalized string
+     * @return The base64 encoded MAC
+     */
+    static String hmac(Algorithm algorithm, String key, String normalized) {
+        Mac mac = mac(algorithm, key);
+        return DatatypeConverter.printBase64Binary(mac.doFinal(normalized.getBytes(UTF_8)));
+    }
+
+    /**
+     * Calculate the payload hash of a buffered body.
+     *
+     * @param algorithm
+     * @param body
+     * @param contentType
+     * @return The base64 encoded payload hash.
+     */
+    static String payloadHash(Algorithm algorithm, byte[] body, String contentType) {
+        MessageDigest digest = digest(algorithm);
+        PayloadHash.start(digest, contentType);
+        digest.update(body);
+        return PayloadHash.finish(digest);
+    }
+
+    /**
+     * Check the MAC of an Authorization header. Produces the same result as
+     * HawkContext.isValidMac() for a context built from the same values.
+     *
+     * @param ext The ext value or null if none is covered by the MAC.
+     * @return true if the MAC is valid.
+     */
+    static boolean isValidHeaderMac(String mac, Algorithm algorithm, String key, long ts, String nonce,
+                                    String method, String path, String host, int port, String hash,
+                                    String ext) {
+        if (mac == null) {
+            return false;
+        }
+        String normalized = normalize(HEADER_PREFIX, ts, nonce, method, path, host, port, hash, ext);
+        return Util.fixedTimeEqual(hmac(algorithm, key, normalized), mac);
+    }
+
+    /**
+     * Check the MAC of a bewit. Bewits are only valid for GET requests and their MAC
+     * covers the expiry time in place of the timestamp and no nonce.
+     *
+     * @param resource The request path and query without the bewit parameter.
+     * @return true if the MAC is valid.
+     */
+    static boolean isValidBewitMac(String mac, Algorithm algorithm, String key, long exp,
+                                   String resource, String host, int port, String ext) {
+        if (mac == null) {
+            return false;
+        }
+        String normalized = normalize(BEWIT_PREFIX, exp, "", "GET", resource, host, port, null, ext);
+        return Util.fixedTimeEqual(hmac(algorithm, key, normalized), mac);
+    }
+
+    private static String normalize(String prefix, long ts, String nonce, String method, String path,
+                                    String host, int port, String hash, String ext) {
+        StringBuilder sb = new StringBuilder(prefix.length() + 128);
+        sb.append(prefix)
+                .append(ts).append('\n')
+                .append(nonce).append('\n')
+                .append(method.toUpperCase()).append('\n')
+                .append(path).append('\n')
+                .append(host.toLowerCase()).append('\n')
+                .append(port).append('\n')
+                .append(hash == null ? "" : hash).append('\n')
+                .append(ext == null ? "" : ext).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Map a Hawk algorithm to the JCA name of its HMAC.
+     *
+     * @param algorithm
+     * @return JCA Mac name
+     */
+    static String macName(Algorithm algorithm) {
+        switch (algorithm) {
+            case SHA_1:
+                return "HmacSHA1";
+            case SHA_256:
+                return "HmacSHA256";
+            default:
+                throw new IllegalArgumentException("Unsupported algorithm " + algorithm);
+        }
+    }
+
+    private static final class MacKey {
+        private final Algorithm algorithm;
+        private final String key;
+
+        private MacKey(Algorithm algorithm, String key) {
+            this.algorithm = algorithm;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MacKey)) {
+                return false;
+            }
+            MacKey other = (MacKey) o;
+            return algorithm == other.algorithm && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * algorithm.hashCode() + key.hashCode();
+        }
+    }
+
+}
@@ -4,7 +4,12 @@ package net.jalg.nioo.rs.server;
 import javax.ws.rs.container.DynamicFeature;
 import javax.ws.rs.container.ResourceInfo;
 import javax.ws.rs.core.FeatureContext;
+import java.io.Closeable;
 import java.lang.annotation.Annotation;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,16 +24,57 @@ import java.util.logging.Logger;
  * per-method configuration needs to be specified by attaching a @HawkProtected annotation
  * to the desired methods.
  * <p>
+ * Unless a clock has been set, the filters share a {@link CoarseClock} whose background
+ * thread is started when the first method is configured. Call {@link #close()} when the
+ * application is shut down to stop it.
  *
  * @author Jan Algermissen, http://jalg.net
  *
  */
-public class HawkFeature implements DynamicFeature {
+public class HawkFeature implements DynamicFeature, Closeable {
 
     public static final String SCHEME_NAME = "Hawk";
 
 	private HawkServerProvider hawkProvider;
 
+	private boolean streamRequestPayload;
+
+	private int responseBufferLimit = -1;
+
+	private boolean streamUnhashedResponses;
+
+	private int requestBufferThreshold = -1;
+
+	private long maxRequestPayloadSize = -1;
+
+	private boolean reuseCryptoEngines;
+
+	private HawkMetrics metrics = HawkMetrics.NONE;
+
+	private long asyncProviderTimeout = -1;
+
+	private boolean signedClockSkewChallenge = true;
+
+	private HawkTickets tickets;
+
+	private BewitCache bewitCache;
+
+	private ResponseHashCache responseHashCache;
+
+	private FailureLimiter failureLimiter;
+
+	private RemoteAddressResolver remoteAddressResolver;
+
+	private HawkClock clock;
+
+	private HawkClock defaultClock;
+
+	private HawkServerConfig config;
+
+	private final List<HawkServerFilter> filters = new CopyOnWriteArrayList<HawkServerFilter>();
+
+	private final Map<String, RejectResponses> rejectResponses = new HashMap<String, RejectResponses>();
+
 	/**
 	 * Create a new HawkFeature using the given HawkProvider instance.
      * This method is responsible for bootstrapping; it binds the filter instances
@@ -41,6 +87,250 @@ public class HawkFeature implements DynamicFeature {
 		this.hawkProvider = hawkProvider;
 	}
 
+	/**
+	 * Configure whether the filters calculate the request payload hash while the
+	 * entity is being read, instead of buffering the whole body first. Defaults to false.
+	 *
+	 * @param streamRequestPayload
+	 */
+	public void setStreamRequestPayload(boolean streamRequestPayload) {
+		this.streamRequestPayload = streamRequestPayload;
+	}
+
+	/**
+	 * Configure the maximum number of response body bytes the filters buffer for
+	 * calculating the response payload hash. Larger bodies are answered with a 500
+	 * response unless {@link #setStreamUnhashedResponses(boolean)} allows sending them
+	 * without a payload hash. A negative value, the default, buffers bodies of any size.
+	 *
+	 * @param responseBufferLimit
+	 */
+	public void setResponseBufferLimit(int responseBufferLimit) {
+		this.responseBufferLimit = responseBufferLimit;
+	}
+
+	/**
+	 * Allow bodies beyond the response buffer limit to be streamed with a
+	 * Server-Authorization header that has no payload hash, even for resource methods
+	 * that hash response payloads. Such responses are logged and counted with
+	 * {@link HawkMetrics#countOversizedResponse(boolean)}. Defaults to false.
+	 *
+	 * @param streamUnhashedResponses
+	 */
+	public void setStreamUnhashedResponses(boolean streamUnhashedResponses) {
+		this.streamUnhashedResponses = streamUnhashedResponses;
+	}
+
+	/**
+	 * Configure the number of request body bytes the filters keep in memory for payload
+	 * validation. The remainder of larger bodies is written to a temporary file. A
+	 * negative value, the default, keeps the whole body in memory.
+	 *
+	 * @param requestBufferThreshold
+	 */
+	public void setRequestBufferThreshold(int requestBufferThreshold) {
+		this.requestBufferThreshold = requestBufferThreshold;
+	}
+
+	/**
+	 * Configure the maximum size of request bodies the filters validate. Larger bodies
+	 * are rejected with 413 Request Entity Too Large. A negative value, the default,
+	 * allows bodies of any size.
+	 *
+	 * @param maxRequestPayloadSize
+	 */
+	public void setMaxRequestPayloadSize(long maxRequestPayloadSize) {
+		this.maxRequestPayloadSize = maxRequestPayloadSize;
+	}
+
+	/**
+	 * Configure whether the filters validate MACs and hash buffered payloads using
+	 * per-thread Mac and MessageDigest instances. Mac instances for recently used
+	 * credentials are kept with their key already loaded. Defaults to false.
+	 *
+	 * @param reuseCryptoEngines
+	 */
+	public void setReuseCryptoEngines(boolean reuseCryptoEngines) {
+		this.reuseCryptoEngines = reuseCryptoEngines;
+	}
+
+	/**
+	 * Set the receiver of the filters' stage timings and rejection counts. Defaults to
+	 * HawkMetrics.NONE, in which case nothing is measured.
+	 *
+	 * @param metrics
+	 */
+	public void setMetrics(HawkMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Set the maximum time in milliseconds the filters wait for the results of an
+	 * AsyncHawkServerProvider. If not set, the filter default of 10 seconds applies.
+	 *
+	 * @param asyncProviderTimeout
+	 */
+	public void setAsyncProviderTimeout(long asyncProviderTimeout) {
+		this.asyncProviderTimeout = asyncProviderTimeout;
+	}
+
+	/**
+	 * Configure whether the 401 response for a timestamp outside the allowed clock
+	 * skew is signed with the client's credentials. Defaults to true. Unsigned responses
+	 * are sent before any credential lookup or MAC calculation, which makes requests
+	 * with stale timestamps cheap to reject. They carry the realm and the server time
+	 * but no tsm, so clients cannot verify the time and will not resync their clocks;
+	 * a client with a wrong clock keeps failing until it is corrected otherwise.
+	 *
+	 * @param signedClockSkewChallenge
+	 */
+	public void setSignedClockSkewChallenge(boolean signedClockSkewChallenge) {
+		this.signedClockSkewChallenge = signedClockSkewChallenge;
+	}
+
+	/**
+	 * Enable Iron-sealed tickets. Authenticated clients receive a ticket carrying their
+	 * credentials, which spares the credential lookup for later requests that present it.
+	 *
+	 * @param tickets The ticket configuration or null to disable tickets (the default).
+	 */
+	public void setTickets(HawkTickets tickets) {
+		this.tickets = tickets;
+	}
+
+	/**
+	 * Set the cache of validated bewits, shared by all filters. Repeated requests for
+	 * the same bewit-signed URI then skip decoding the bewit, the credential lookup and
+	 * the MAC calculation until the bewit expires.
+	 *
+	 * @param bewitCache The cache or null to validate every bewit (the default).
+	 */
+	public void setBewitCache(BewitCache bewitCache) {
+		this.bewitCache = bewitCache;
+	}
+
+	/**
+	 * Set the cache of response payload hashes, shared by all filters. Responses with a
+	 * strong ETag or a version key in HawkServerFilter.RESPONSE_VERSION_PROPERTY are then
+	 * hashed only once and afterwards written without buffering.
+	 *
+	 * @param responseHashCache The cache or null to hash every response body (the default).
+	 */
+	public void setResponseHashCache(ResponseHashCache responseHashCache) {
+		this.responseHashCache = responseHashCache;
+	}
+
+	/**
+	 * Set the limiter, shared by all filters, that rejects requests of Hawk IDs and client
+	 * addresses with many recent authentication failures with a 429 response before
+	 * looking up credentials or calculating the MAC.
+	 *
+	 * @param failureLimiter The limiter or null to not limit failures (the default).
+	 */
+	public void setFailureLimiter(FailureLimiter failureLimiter) {
+		this.failureLimiter = failureLimiter;
+	}
+
+	/**
+	 * Set the resolver for client addresses used by the failure limiter. Without a
+	 * resolver, failures are only limited per Hawk ID.
+	 *
+	 * @param remoteAddressResolver
+	 */
+	public void setRemoteAddressResolver(RemoteAddressResolver remoteAddressResolver) {
+		this.remoteAddressResolver = remoteAddressResolver;
+	}
+
+	/**
+	 * Get the reject responses for a realm, shared by all filters of that realm.
+	 */
+	private synchronized RejectResponses rejectResponses(String realm) {
+		RejectResponses responses = rejectResponses.get(realm);
+		if (responses == null) {
+			responses = new RejectResponses(realm);
+			rejectResponses.put(realm, responses);
+		}
+		return responses;
+	}
+
+	/**
+	 * Set the clock the filters check request timestamps against. By default they
+	 * share a {@link CoarseClock}. Must be called before the feature is registered.
+	 *
+	 * @param clock
+	 */
+	public void setClock(HawkClock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Take a new snapshot of the provider's clock skew and validation host and port
+	 * and pass it to all filters. The filters do not ask the provider for these
+	 * settings per request, so this must be called after they have changed.
+	 */
+	public void reloadConfig() {
+		HawkServerConfig snapshot = HawkServerConfig.from(hawkProvider);
+		synchronized (this) {
+			config = snapshot;
+		}
+		for (HawkServerFilter filter : filters) {
+			filter.setConfig(snapshot);
+		}
+	}
+
+	/**
+	 * Stop the shared clock if the filters use it. They fall back to the system
+	 * clock, so requests still being served keep seeing the current time.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (defaultClock == null) {
+				return;
+			}
+			defaultClock = null;
+		}
+		for (HawkServerFilter filter : filters) {
+			filter.setClock(HawkClock.SYSTEM);
+		}
+		CoarseClock.releaseDefault();
+	}
+
+	private synchronized HawkClock clock() {
+		if (clock != null) {
+			return clock;
+		}
+		if (defaultClock == null) {
+			defaultClock = CoarseClock.acquireDefault();
+		}
+		return defaultClock;
+	}
+
+	private synchronized HawkServerConfig config() {
+		if (config == null) {
+			config = HawkServerConfig.from(hawkProvider);
+		}
+		return config;
+	}
+
+	/**
+	 * Register only those parts of the filter that the method's configuration needs.
+	 * Plain authenticated methods get the request filter alone.
+	 */
+	private void register(FeatureContext fc, HawkServerFilter filter, boolean validateRequestPayload,
+			boolean hashResponsePayload) {
+		fc.register(new HawkRequestFilter(filter));
+		if (hashResponsePayload || tickets != null) {
+			fc.register(new HawkResponseFilter(filter));
+		}
+		if (validateRequestPayload) {
+			fc.register(new HawkReaderInterceptor(filter));
+		}
+		if (hashResponsePayload) {
+			fc.register(new HawkWriterInterceptor(filter));
+		}
+	}
+
 	@Override
 	public void configure(ResourceInfo ri, FeatureContext fc) {
 
@@ -56,8 +346,30 @@ public class HawkFeature implements DynamicFeature {
 				boolean validateRequestPayload = hp.validateRequestPayload();
 				boolean hashResponsePayload = hp.hashResponsePayload();
 
-				fc.register(new HawkServerFilter(hawkProvider, realm,
-						validateRequestPayload, hashResponsePayload));
+				HawkServerFilter filter = new HawkServerFilter(hawkProvider, realm,
+						validateRequestPayload, hashResponsePayload);
+				filter.setStreamRequestPayload(streamRequestPayload);
+				filter.setResponseBufferLimit(responseBufferLimit);
+				filter.setStreamUnhashedResponses(streamUnhashedResponses);
+				filter.setRequestBufferThreshold(requestBufferThreshold);
+				filter.setMaxRequestPayloadSize(maxRequestPayloadSize);
+				filter.setReuseCryptoEngines(reuseCryptoEngines);
+				filter.setMetrics(metrics);
+				filter.setSignedClockSkewChallenge(signedClockSkewChallenge);
+				filter.setTickets(tickets);
+				filter.setAllowBewit(hp.allowBewit());
+				filter.setBewitCache(bewitCache);
+				filter.setResponseHashCache(responseHashCache);
+				filter.setRejectResponses(rejectResponses(realm));
+				filter.setFailureLimiter(failureLimiter);
+				filter.setRemoteAddressResolver(remoteAddressResolver);
+				if (asyncProviderTimeout >= 0) {
+					filter.setAsyncProviderTimeout(asyncProviderTimeout);
+				}
+				filter.setConfig(config());
+				filter.setClock(clock());
+				filters.add(filter);
+				register(fc, filter, validateRequestPayload, hashResponsePayload);
 			}
 		}
 
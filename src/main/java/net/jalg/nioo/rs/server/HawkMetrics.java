@@ -0,0 +1,70 @@
+package net.jalg.nioo.rs.server;
+
+/** Receiver of timings and rejection counts reported by the Hawk filter.
+ *
+ * Implementations can forward the values to any metrics library. They are called
+ * on the request threads and must therefore be thread safe and fast.
+ * <p>
+ * The filter only measures times if a HawkMetrics other than {@link #NONE} has been
+ * configured.
+ */
+public interface HawkMetrics {
+
+    /**
+     * Processing stages of the filter that are timed. PAYLOAD_HASHING includes reading
+     * or writing the entity.
+     */
+    public enum Stage {
+        HEADER_PARSING, CREDENTIAL_LOOKUP, MAC_VALIDATION, NONCE_CHECK, PAYLOAD_HASHING
+    }
+
+    /**
+     * Reasons for rejecting a request. THROTTLED requests are rejected with a 429 response,
+     * all others with a 401 response.
+     */
+    public enum Rejection {
+        MISSING_HEADER, PARSE_FAILURE, UNKNOWN_ID, INVALID_MAC, CLOCK_SKEW, REPLAY, INVALID_PAYLOAD_HASH,
+        THROTTLED
+    }
+
+    /**
+     * HawkMetrics that ignores everything. This is the default.
+     */
+    public static final HawkMetrics NONE = new HawkMetrics() {
+        @Override
+        public void recordTime(Stage stage, long nanos) {
+        }
+
+        @Override
+        public void countRejection(Rejection rejection) {
+        }
+
+        @Override
+        public void countOversizedResponse(boolean streamed) {
+        }
+    };
+
+    /**
+     * Record the time spent in a processing stage for one request.
+     *
+     * @param stage
+     * @param nanos Elapsed time in nanoseconds.
+     */
+    public void recordTime(Stage stage, long nanos);
+
+    /**
+     * Count a rejected request.
+     *
+     * @param rejection The reason for the rejection.
+     */
+    public void countRejection(Rejection rejection);
+
+    /**
+     * Count a response whose body exceeded the response buffer limit.
+     *
+     * @param streamed true if the body has been sent without a payload hash, false if
+     *                 it has been replaced by a 500 response.
+     */
+    public void countOversizedResponse(boolean streamed);
+
+}
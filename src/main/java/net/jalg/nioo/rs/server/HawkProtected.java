@@ -36,4 +36,12 @@ public @interface HawkProtected {
      */
     boolean hashResponsePayload();
 
+    /**
+     * This attribute controls whether GET requests to the resource may be authenticated
+     * with a bewit query parameter instead of an Authorization header. Responses to
+     * such requests are not signed.
+     * @return
+     */
+    boolean allowBewit() default false;
+
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package net.jalg.nioo.rs.server;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import java.io.IOException;
+
+/** Request payload validation part of a {@link HawkServerFilter}.
+ */
+@Priority(Priorities.AUTHENTICATION)
+final class HawkReaderInterceptor implements ReaderInterceptor {
+
+    private final HawkServerFilter filter;
+
+    HawkReaderInterceptor(HawkServerFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException, WebApplicationException {
+        return filter.aroundReadFrom(context);
+    }
+
+}
@@ -0,0 +1,29 @@
+package net.jalg.nioo.rs.server;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import java.io.IOException;
+
+/** Request authentication part of a {@link HawkServerFilter}.
+ *
+ * HawkFeature registers the parts of a filter separately, so that resource methods
+ * without payload validation or response signing do not pass through interceptors
+ * that have nothing to do.
+ */
+@Priority(Priorities.AUTHENTICATION)
+final class HawkRequestFilter implements ContainerRequestFilter {
+
+    private final HawkServerFilter filter;
+
+    HawkRequestFilter(HawkServerFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        filter.filter(requestContext);
+    }
+
+}
@@ -0,0 +1,28 @@
+package net.jalg.nioo.rs.server;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import java.io.IOException;
+
+/** Response filter part of a {@link HawkServerFilter}, needed for response signing
+ * and for issuing tickets.
+ */
+@Priority(Priorities.AUTHENTICATION)
+final class HawkResponseFilter implements ContainerResponseFilter {
+
+    private final HawkServerFilter filter;
+
+    HawkResponseFilter(HawkServerFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+            throws IOException {
+        filter.filter(requestContext, responseContext);
+    }
+
+}
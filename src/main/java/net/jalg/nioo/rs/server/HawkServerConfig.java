@@ -0,0 +1,51 @@
+package net.jalg.nioo.rs.server;
+
+/** Snapshot of the validation settings of a HawkServerProvider.
+ *
+ * The filter takes a snapshot when it is created instead of asking the provider for
+ * every request. After the provider's settings have changed, a new snapshot has to be
+ * passed to the filters, for example using {@link HawkFeature#reloadConfig()}.
+ */
+public final class HawkServerConfig {
+
+    private final int allowedClockSkew;
+
+    private final String validationHost;
+
+    private final int validationPort;
+
+    /**
+     * @param allowedClockSkew The allowed clock skew in seconds or 0 to turn off clock skew checking.
+     * @param validationHost Host to validate MACs with or null to use the host of the request URI.
+     * @param validationPort Port to validate MACs with or -1 to use the port of the request URI.
+     */
+    public HawkServerConfig(int allowedClockSkew, String validationHost, int validationPort) {
+        this.allowedClockSkew = allowedClockSkew;
+        this.validationHost = validationHost;
+        this.validationPort = validationPort;
+    }
+
+    /**
+     * Take a snapshot of the provider's current settings.
+     *
+     * @param provider
+     * @return The snapshot.
+     */
+    public static HawkServerConfig from(HawkServerProvider provider) {
+        return new HawkServerConfig(provider.getAllowedClockSkew(), provider.getConfiguredValidationHost(),
+                provider.getConfiguredValidationPort());
+    }
+
+    public int getAllowedClockSkew() {
+        return allowedClockSkew;
+    }
+
+    public String getValidationHost() {
+        return validationHost;
+    }
+
+    public int getValidationPort() {
+        return validationPort;
+    }
+
+}
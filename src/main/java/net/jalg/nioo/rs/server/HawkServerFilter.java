@@ -5,6 +5,7 @@ import net.jalg.hawkj.HawkContext.HawkContextBuilder;
 import net.jalg.hawkj.ext.InputStreamBuffer;
 
 import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.container.ContainerRequestContext;
@@ -18,9 +19,18 @@ import javax.ws.rs.ext.ReaderInterceptorContext;
 import javax.ws.rs.ext.WriterInterceptor;
 import javax.ws.rs.ext.WriterInterceptorContext;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,20 +49,79 @@ public class HawkServerFilter implements ContainerRequestFilter,
 
     private static final int HTTPS_DEFAULT_PORT = 443;
 
+    /**
+     * Request property holding the HawkContext of an authenticated request. It is only
+     * set for resource methods that validate the request payload or sign the response.
+     */
     public static final String HAWK_SERVER_PROPERTY = "net.jalg.nioo.rs.server.hawk";
 
+    private static final String TICKET_PROPERTY = "net.jalg.nioo.rs.server.ticket";
+
+    private static final String RESOURCE_PROPERTY = "net.jalg.nioo.rs.server.resource";
+
+    /**
+     * Request property under which an application can supply a version key for the
+     * response body, used instead of the ETag to look up cached response payload hashes.
+     * The key must change whenever the body of the resource changes.
+     */
+    public static final String RESPONSE_VERSION_PROPERTY = "net.jalg.nioo.rs.server.responseVersion";
+
+    private static final long DEFAULT_ASYNC_PROVIDER_TIMEOUT = 10000L;
+
+    private static final int MAX_AUTHORIZATION_HEADER_LENGTH = 4096;
+
+    private static final int MAX_NONCE_LENGTH = 256;
+
 
     private static Logger LOG = Logger.getLogger(HawkServerFilter.class
             .getName());
 
     private HawkServerProvider hawkProvider;
 
+    private volatile HawkServerConfig config;
+
+    private volatile HawkClock clock = HawkClock.SYSTEM;
+
     private String realm;
 
     private final boolean validateRequestPayload;
 
     private final boolean hashResponsePayload;
 
+    private boolean streamRequestPayload;
+
+    private int responseBufferLimit = -1;
+
+    private boolean streamUnhashedResponses;
+
+    private int requestBufferThreshold = -1;
+
+    private long maxRequestPayloadSize = -1;
+
+    private boolean reuseCryptoEngines;
+
+    private long asyncProviderTimeout = DEFAULT_ASYNC_PROVIDER_TIMEOUT;
+
+    private HawkMetrics metrics = HawkMetrics.NONE;
+
+    private boolean signedClockSkewChallenge = true;
+
+    private HawkTickets tickets;
+
+    private boolean allowBewit;
+
+    private BewitCache bewitCache;
+
+    private ResponseHashCache responseHashCache;
+
+    private FailureLimiter failureLimiter;
+
+    private RemoteAddressResolver remoteAddressResolver;
+
+    private boolean timed;
+
+    private RejectResponses rejectResponses;
+
     @Context
     private Request request;
 
@@ -91,33 +160,231 @@ public class HawkServerFilter implements ContainerRequestFilter,
         this.hawkProvider = hawkProvider;
         this.validateRequestPayload = validateRequestPayload;
         this.hashResponsePayload = hashResponsePayload;
+        this.rejectResponses = new RejectResponses(realm);
     }
 
-    private Response createDefault401Response() {
-        String value = HawkContext.SCHEME;
-        if(realm != null) {
-            value += " realm=\"" + realm + "\"";
+    /**
+     * Set the validation settings to use instead of asking the provider for every
+     * request. Unless settings have been set, the filter takes a snapshot of the
+     * provider's settings when it handles its first request.
+     *
+     * @param config
+     */
+    public void setConfig(HawkServerConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Take a new snapshot of the provider's validation settings after they have changed.
+     */
+    public void reloadConfig() {
+        this.config = HawkServerConfig.from(hawkProvider);
+    }
+
+    private HawkServerConfig config() {
+        HawkServerConfig config = this.config;
+        if (config == null) {
+            config = HawkServerConfig.from(hawkProvider);
+            this.config = config;
         }
+        return config;
+    }
+
+    /**
+     * Set the clock to check request timestamps against. The default is
+     * {@link HawkClock#SYSTEM}. HawkFeature sets a {@link CoarseClock} shared by
+     * its filters unless it has been given a clock.
+     *
+     * @param clock
+     */
+    public void setClock(HawkClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Configure whether the request payload hash is calculated while the entity is
+     * being read instead of from a buffered copy of the body.
+     *
+     * @param streamRequestPayload
+     */
+    public void setStreamRequestPayload(boolean streamRequestPayload) {
+        this.streamRequestPayload = streamRequestPayload;
+    }
+
+    /**
+     * Configure the maximum number of response body bytes to buffer for calculating the
+     * response payload hash. Larger bodies are answered with a 500 response, unless
+     * streaming them without a payload hash has been allowed. A negative value, the
+     * default, buffers bodies of any size.
+     *
+     * @param responseBufferLimit
+     */
+    public void setResponseBufferLimit(int responseBufferLimit) {
+        this.responseBufferLimit = responseBufferLimit;
+    }
+
+    /**
+     * Configure whether bodies beyond the response buffer limit are streamed to the
+     * client with a Server-Authorization header that has no payload hash. Clients that
+     * validate response payloads will reject such responses. Defaults to false.
+     *
+     * @param streamUnhashedResponses
+     */
+    public void setStreamUnhashedResponses(boolean streamUnhashedResponses) {
+        this.streamUnhashedResponses = streamUnhashedResponses;
+    }
+
+    /**
+     * Configure the number of request body bytes to keep in memory when the body is
+     * buffered for payload validation. The remainder of larger bodies is written to a
+     * temporary file, which is deleted after the entity has been read. With a threshold
+     * configured, the payload hash is checked before the entity provider sees the body.
+     * A negative value, the default, keeps the whole body in memory.
+     *
+     * @param requestBufferThreshold
+     */
+    public void setRequestBufferThreshold(int requestBufferThreshold) {
+        this.requestBufferThreshold = requestBufferThreshold;
+    }
+
+    /**
+     * Configure the maximum size of request bodies that are validated. Larger bodies are
+     * rejected with 413 Request Entity Too Large. Unless a request buffer threshold is
+     * set, a maximum size makes the filter hash the body while it is read, as with
+     * streamed payload validation. A negative value, the default, allows bodies of any size.
+     *
+     * @param maxRequestPayloadSize
+     */
+    public void setMaxRequestPayloadSize(long maxRequestPayloadSize) {
+        this.maxRequestPayloadSize = maxRequestPayloadSize;
+    }
+
+    /**
+     * Configure whether MAC validation and buffered payload hashing use per-thread
+     * Mac and MessageDigest instances instead of creating new ones for every request.
+     *
+     * @param reuseCryptoEngines
+     */
+    public void setReuseCryptoEngines(boolean reuseCryptoEngines) {
+        this.reuseCryptoEngines = reuseCryptoEngines;
+    }
+
+    /**
+     * Set the maximum time in milliseconds to wait for the results of an
+     * AsyncHawkServerProvider. Defaults to 10 seconds.
+     *
+     * @param asyncProviderTimeout
+     */
+    public void setAsyncProviderTimeout(long asyncProviderTimeout) {
+        this.asyncProviderTimeout = asyncProviderTimeout;
+    }
 
-        return Response.status(Status.UNAUTHORIZED)
+    /**
+     * Set the receiver of timings and rejection counts. Times are only measured if
+     * the given metrics are not HawkMetrics.NONE.
+     *
+     * @param metrics
+     */
+    public void setMetrics(HawkMetrics metrics) {
+        this.metrics = metrics;
+        this.timed = metrics != HawkMetrics.NONE;
+    }
 
-                .header(HttpHeaders.WWW_AUTHENTICATE, value)
-                .type("text/plain").entity("Unable to authorize request.")
-                .build();
+    /**
+     * Configure whether the 401 response for a timestamp outside the allowed clock skew
+     * is signed with the client's credentials (the default). An unsigned response can
+     * be sent without looking up the credentials or validating the request MAC, but it
+     * carries no tsm, so clients cannot verify the server time and will not resync
+     * their clocks from it.
+     *
+     * @param signedClockSkewChallenge
+     */
+    public void setSignedClockSkewChallenge(boolean signedClockSkewChallenge) {
+        this.signedClockSkewChallenge = signedClockSkewChallenge;
+    }
+
+    /**
+     * Enable issuing and accepting Iron-sealed tickets that carry the client's
+     * credentials, so that requests with a ticket do not require a credential lookup.
+     *
+     * @param tickets The ticket configuration or null to disable tickets.
+     */
+    public void setTickets(HawkTickets tickets) {
+        this.tickets = tickets;
+    }
+
+    /**
+     * Configure whether GET requests may be authenticated with a bewit query parameter
+     * instead of an Authorization header. Defaults to false.
+     *
+     * @param allowBewit
+     */
+    public void setAllowBewit(boolean allowBewit) {
+        this.allowBewit = allowBewit;
+    }
+
+    /**
+     * Set the cache of validated bewits.
+     *
+     * @param bewitCache The cache or null to validate every bewit (the default).
+     */
+    public void setBewitCache(BewitCache bewitCache) {
+        this.bewitCache = bewitCache;
+    }
+
+    /**
+     * Set the cache of response payload hashes.
+     *
+     * @param responseHashCache The cache or null to hash every response body (the default).
+     */
+    public void setResponseHashCache(ResponseHashCache responseHashCache) {
+        this.responseHashCache = responseHashCache;
+    }
+
+    /**
+     * Set the limiter that blocks IDs and client addresses after repeated authentication
+     * failures.
+     *
+     * @param failureLimiter The limiter or null to not limit failures (the default).
+     */
+    public void setFailureLimiter(FailureLimiter failureLimiter) {
+        this.failureLimiter = failureLimiter;
+    }
+
+    /**
+     * Set the resolver for the client address used by the failure limiter. Without
+     * a resolver, failures are only limited per Hawk ID.
+     *
+     * @param remoteAddressResolver
+     */
+    public void setRemoteAddressResolver(RemoteAddressResolver remoteAddressResolver) {
+        this.remoteAddressResolver = remoteAddressResolver;
+    }
+
+    /**
+     * Use the given, possibly shared, precomputed reject responses. They must have
+     * been created for the realm of this filter.
+     *
+     * @param rejectResponses
+     */
+    void setRejectResponses(RejectResponses rejectResponses) {
+        this.rejectResponses = rejectResponses;
+    }
+
+    private Response createDefault401Response() {
+        return rejectResponses.unauthorized();
     }
 
     private Response create401Response(HawkWwwAuthenticateContext context) {
-        WwwAuthenticateHeader header = context.createWwwAuthenticateHeader();
-        return Response.status(Status.UNAUTHORIZED)
-                .header(HttpHeaders.WWW_AUTHENTICATE, header.toString())
-                .type("text/plain").entity("Unable to authorize request.")
-                .build();
+        return rejectResponses.unauthorized(context.createWwwAuthenticateHeader().toString());
+    }
+
+    private Response createUnsigned401Response(int now) {
+        return rejectResponses.staleTimestamp(now);
     }
 
     private Response create500Response() {
-        return Response.status(Status.INTERNAL_SERVER_ERROR)
-                .type("text/plain").entity("Internal Server Error")
-                .build();
+        return rejectResponses.serverError();
     }
 
     /*
@@ -135,6 +402,27 @@ public class HawkServerFilter implements ContainerRequestFilter,
 		 * header.
 		 */
         if (!requestContext.getHeaders().containsKey(HttpHeaders.AUTHORIZATION)) {
+            if (allowBewit) {
+                String bewit = Bewit.find(requestContext.getUriInfo().getRequestUri().getRawQuery());
+                if (bewit != null) {
+                    authenticateBewit(requestContext, bewit);
+                    return;
+                }
+            }
+            metrics.countRejection(HawkMetrics.Rejection.MISSING_HEADER);
+            requestContext.abortWith(createDefault401Response());
+            return;
+        }
+
+        /*
+         * The checks up to the credential lookup are cheap and do not involve
+         * the provider or any cryptography. They are done first so that stale,
+         * malformed or oversized requests cost us as little as possible.
+         */
+        String authorization = requestContext.getHeaderString(HttpHeaders.AUTHORIZATION);
+        if (authorization.length() > MAX_AUTHORIZATION_HEADER_LENGTH) {
+            LOG.log(Level.FINE, "Authorization header too long: {0}", authorization.length());
+            metrics.countRejection(HawkMetrics.Rejection.PARSE_FAILURE);
             requestContext.abortWith(createDefault401Response());
             return;
         }
@@ -142,35 +430,135 @@ public class HawkServerFilter implements ContainerRequestFilter,
 		/*
 		 * Parse Authorization header.
 		 */
-        AuthorizationHeader authHeader;
-        try {
-            authHeader = AuthorizationHeader.authorization(requestContext
-                    .getHeaderString(HttpHeaders.AUTHORIZATION));
-        } catch (AuthHeaderParsingException e) {
-            LOG.log(Level.SEVERE, "Unable to parse HTTP Authorization header, {0}", e);
+        long start = startTimer();
+        HawkAuthorization authHeader = HawkAuthorization.parse(authorization);
+        if (authHeader == null) {
+            LOG.log(Level.SEVERE, "Unable to parse HTTP Authorization header");
+            metrics.countRejection(HawkMetrics.Rejection.PARSE_FAILURE);
+            requestContext.abortWith(createDefault401Response());
+            return;
+        }
+        stopTimer(HawkMetrics.Stage.HEADER_PARSING, start);
+        String id = authHeader.getId();
+        long ts = authHeader.getTs();
+        String nonce = authHeader.getNonce();
+
+        if (!isWellFormedNonce(nonce)) {
+            LOG.log(Level.FINE, "Malformed nonce for ID {0}", id);
+            metrics.countRejection(HawkMetrics.Rejection.PARSE_FAILURE);
             requestContext.abortWith(createDefault401Response());
             return;
         }
 
         /*
-         * Look up the Hawk credentials for the given ID.
+         * IDs and addresses with many recent failures are rejected before any
+         * provider call or MAC calculation.
+         */
+        String address = null;
+        if (failureLimiter != null) {
+            address = remoteAddress(requestContext);
+            if (isThrottled(requestContext, id, address)) {
+                return;
+            }
+        }
+
+		/*
+		 * Check timestamp. If the skew is too large we abort with a 401
+		 * response, giving the client our current time. Unless configured
+		 * to sign that response, we can do so right away.
+		 */
+        HawkServerConfig config = config();
+        int now = (int) (clock.currentTimeMillis() / 1000L);
+        int allowedSkew = config.getAllowedClockSkew();
+        boolean stale = (allowedSkew != 0) && ((ts < now - allowedSkew) || (ts > now + allowedSkew));
+
+        if (stale) {
+            LOG.log(Level.FINE, "Clock skew too large. Now: {0}, ts: {1}",
+                    new String[]{String.valueOf(now), String.valueOf(ts)});
+            if (!signedClockSkewChallenge) {
+                metrics.countRejection(HawkMetrics.Rejection.CLOCK_SKEW);
+                requestContext.abortWith(createUnsigned401Response(now));
+                return;
+            }
+        }
+
+        /*
+         * With an asynchronous provider, start a read-only nonce check now so that
+         * it runs while the credentials are being looked up. A plain provider is
+         * asked right away so that known replays are rejected before the
+         * credential lookup and the MAC calculation; after the MAC it is only told
+         * to note the nonce. Atomic providers are not asked here, and neither are
+         * executor-backed providers with a plain delegate, which check again when
+         * noting. The early check only rejects.
+         */
+        AsyncHawkServerProvider asyncProvider = hawkProvider instanceof AsyncHawkServerProvider
+                ? (AsyncHawkServerProvider) hawkProvider : null;
+        Future<Boolean> nonceUsedBefore = null;
+        if (!stale) {
+            if (asyncProvider != null) {
+                if (!(asyncProvider instanceof ExecutorAsyncHawkServerProvider)
+                        || ((ExecutorAsyncHawkServerProvider) asyncProvider).hasAtomicDelegate()) {
+                    nonceUsedBefore = asyncProvider.nonceHasBeenUsedBeforeAsync(id, ts, nonce);
+                }
+            } else if (!(hawkProvider instanceof AtomicNonceHawkServerProvider)) {
+                start = startTimer();
+                try {
+                    boolean usedBefore = hawkProvider.nonceHasBeenUsedBefore(id, ts, nonce);
+                    stopTimer(HawkMetrics.Stage.NONCE_CHECK, start);
+                    if (usedBefore) {
+                        rejectReplay(requestContext, id, ts, nonce);
+                        return;
+                    }
+                } catch (HawkProviderException e) {
+                    LOG.log(Level.SEVERE, "Unable to validate nonce", e);
+                    requestContext.abortWith(create500Response());
+                    return;
+                }
+            }
+        }
+
+        /*
+         * Take the credentials from the ticket, if the client sent a valid one.
          */
         HawkCredentials credentials = null;
-        try {
-            credentials = hawkProvider.getHawkCredentials(realm,authHeader.getId());
-        } catch (HawkProviderException e) {
-            LOG.log(Level.SEVERE, "Unable to get hawk credentials for Hawk ID: " + authHeader.getId(), e);
-            requestContext.abortWith(create500Response());
-            return;
+        boolean ticketUsed = false;
+        if (tickets != null) {
+            String ticket = requestContext.getHeaderString(HawkTickets.TICKET_HEADER);
+            if (ticket != null) {
+                credentials = tickets.redeem(realm, ticket);
+                if (credentials != null && !credentials.getId().equals(id)) {
+                    LOG.log(Level.FINE, "Ignoring ticket issued for another ID than {0}", id);
+                    credentials = null;
+                }
+                ticketUsed = credentials != null;
+            }
+        }
+
+        /*
+         * Look up the Hawk credentials for the given ID.
+         */
+        start = startTimer();
+        if (!ticketUsed) {
+            try {
+                credentials = asyncProvider != null
+                        ? await(asyncProvider.getHawkCredentialsAsync(realm, id))
+                        : hawkProvider.getHawkCredentials(realm, id);
+            } catch (HawkProviderException e) {
+                LOG.log(Level.SEVERE, "Unable to get hawk credentials for Hawk ID: " + id, e);
+                requestContext.abortWith(create500Response());
+                return;
+            }
         }
+        stopTimer(HawkMetrics.Stage.CREDENTIAL_LOOKUP, start);
         /*
          * Credentials for ID not found, meaning ID is unknown.
          */
         if (credentials == null) {
+            metrics.countRejection(HawkMetrics.Rejection.UNKNOWN_ID);
+            recordFailure(id, address);
             requestContext.abortWith(createDefault401Response());
             return;
         }
-        String id = authHeader.getId();
         String password = credentials.getPwd();
         Algorithm algorithm = credentials.getAlgorithm();
 
@@ -179,35 +567,40 @@ public class HawkServerFilter implements ContainerRequestFilter,
 		 * Builder interface is designed to work with null-ext and null-hash, so
 		 * we do not need conditionals here.
 		 */
-        int port = determineValidationPort(requestContext, hawkProvider);
-        String host = determineValidationHost(requestContext, hawkProvider);
+        int port = determineValidationPort(requestContext, config);
+        String host = determineValidationHost(requestContext, config);
+        String path = requestContext.getUriInfo().getRequestUri().getPath();
+        String payloadHash = authHeader.getHash();
         HawkContext hawk = HawkContext
-                .request(requestContext.getMethod(), requestContext.getUriInfo().getRequestUri().getPath(),
+                .request(requestContext.getMethod(), path,
                         host, port)
                 .credentials(id, password, algorithm)
-                .tsAndNonce(authHeader.getTs(), authHeader.getNonce())
-                .hash(authHeader.getHash()).build();
+                .tsAndNonce(ts, nonce)
+                .hash(payloadHash).build();
 
 		/*
 		 * Now we use the created Hawk to validate the HMAC sent by the client
 		 * in the Authorization header.
 		 */
-        if (!hawk.isValidMac(authHeader.getMac())) {
-            LOG.log(Level.WARNING, "Invalid Hawk signature for ID {0} ", authHeader.getId());
+        start = startTimer();
+        boolean validMac = reuseCryptoEngines
+                ? HawkCrypto.isValidHeaderMac(authHeader.getMac(), algorithm, password, ts,
+                        nonce, requestContext.getMethod(), path, host, port, payloadHash, null)
+                : hawk.isValidMac(authHeader.getMac());
+        stopTimer(HawkMetrics.Stage.MAC_VALIDATION, start);
+        if (!validMac) {
+            LOG.log(Level.WARNING, "Invalid Hawk signature for ID {0} ", id);
+            metrics.countRejection(HawkMetrics.Rejection.INVALID_MAC);
+            recordFailure(id, address);
             requestContext.abortWith(createDefault401Response());
             return;
         }
 
-		/*
-		 * Check timestamp. If the skew is too large we abort with a 401
-		 * response, giving the client our current time.
-		 */
-        int now = (int) (System.currentTimeMillis() / 1000L);
-        int allowedSkew = hawkProvider.getAllowedClockSkew();
-
-        if ((allowedSkew != 0) && ((hawk.getTs() < now - allowedSkew) || (hawk.getTs() > now + allowedSkew))) {
-            LOG.log(Level.FINE, "Clock skew too large. Now: {0}, ts: {1}",
-                    new String[]{String.valueOf(now), String.valueOf(hawk.getTs())});
+        /*
+         * Signed response for a stale timestamp.
+         */
+        if (stale) {
+            metrics.countRejection(HawkMetrics.Rejection.CLOCK_SKEW);
             HawkWwwAuthenticateContext c = HawkWwwAuthenticateContext.ts()
                     .credentials(id, password, algorithm).build();
             requestContext.abortWith(create401Response(c));
@@ -215,15 +608,23 @@ public class HawkServerFilter implements ContainerRequestFilter,
         }
 
 		/*
-		 * Check nonce to prevent replay attacks.
+		 * Check nonce to prevent replay attacks and hand it to the provider
+		 * so that it can remember it for future checks. Providers that support
+		 * it check and note in one step, so that of two concurrent copies of a
+		 * request only one is accepted.
 		 */
+        start = startTimer();
         try {
-            if (hawkProvider.nonceHasBeenUsedBefore(id, hawk.getTs(), hawk.getNonce())) {
-                LOG.log(Level.FINE,
-                        "Possible replay attack - nonce has been used before for ID: {0}, TS: {1}, Nonce: {2}",
-                        new String[]{id, String.valueOf(hawk.getTs()),
-                                hawk.getNonce()});
-                requestContext.abortWith(createDefault401Response());
+            boolean fresh;
+            if (asyncProvider != null) {
+                fresh = (nonceUsedBefore == null || !await(nonceUsedBefore))
+                        && await(asyncProvider.noteNonceIfAbsentAsync(id, ts, nonce));
+            } else {
+                fresh = noteNonce(id, ts, nonce);
+            }
+            stopTimer(HawkMetrics.Stage.NONCE_CHECK, start);
+            if (!fresh) {
+                rejectReplay(requestContext, id, ts, nonce);
                 return;
             }
         } catch (HawkProviderException e) {
@@ -232,11 +633,6 @@ public class HawkServerFilter implements ContainerRequestFilter,
             return;
         }
 
-        /*
-         * Hand nonce to provider in case it wants to remember and do nonce checking.
-         */
-        hawkProvider.noteNonce(id, hawk.getTs(), hawk.getNonce());
-
 
 		/*
 		 * Now that the client has been authenticated, we can make the security
@@ -244,13 +640,166 @@ public class HawkServerFilter implements ContainerRequestFilter,
 		 */
         requestContext.setSecurityContext(new HawkSecurityContext(requestContext.getSecurityContext().isSecure(), credentials.getProvidedUser()));
 
+        /*
+         * Have the response filter issue a ticket if the client did not use one.
+         */
+        if (tickets != null && !ticketUsed) {
+            requestContext.setProperty(TICKET_PROPERTY, credentials);
+        }
+
 		/*
 		 * Store request Hawk in context for reader interceptor to optionally
 		 * verify payload hash and also so that the response chain can access
 		 * the request information when (optionally) calculating the response
-		 * Server-Authorization header.
+		 * Server-Authorization header. Without either, nothing reads it.
 		 */
-        requestContext.setProperty(HAWK_SERVER_PROPERTY, hawk);
+        if (validateRequestPayload || hashResponsePayload) {
+            requestContext.setProperty(HAWK_SERVER_PROPERTY, hawk);
+        }
+        if (hashResponsePayload && responseHashCache != null) {
+            URI requestUri = requestContext.getUriInfo().getRequestUri();
+            String query = requestUri.getRawQuery();
+            requestContext.setProperty(RESOURCE_PROPERTY,
+                    query == null ? requestUri.getRawPath() : requestUri.getRawPath() + '?' + query);
+        }
+    }
+
+    /**
+     * Authenticate a request by the bewit in its query. Bewits have no nonce and can be
+     * used any number of times until they expire. The response is not signed.
+     */
+    private void authenticateBewit(ContainerRequestContext requestContext, String encoded) {
+        String method = requestContext.getMethod();
+        if (!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method)) {
+            LOG.log(Level.FINE, "Bewit not allowed for method {0}", method);
+            metrics.countRejection(HawkMetrics.Rejection.PARSE_FAILURE);
+            requestContext.abortWith(createDefault401Response());
+            return;
+        }
+        URI requestUri = requestContext.getUriInfo().getRequestUri();
+        String resource = Bewit.resource(requestUri.getRawPath(), requestUri.getRawQuery());
+        HawkServerConfig config = config();
+        int port = determineValidationPort(requestContext, config);
+        String host = determineValidationHost(requestContext, config);
+        long now = clock.currentTimeMillis() / 1000L;
+
+        /*
+         * A cache hit means that the bewit has been validated for this realm and
+         * request target before and has not yet expired.
+         */
+        String key = null;
+        HawkCredentials credentials = null;
+        if (bewitCache != null) {
+            key = encoded + ' ' + realm + ' ' + host + ':' + port + resource;
+            credentials = bewitCache.get(key, now);
+        }
+
+        if (credentials == null) {
+            Bewit bewit = Bewit.parse(encoded);
+            if (bewit == null) {
+                LOG.log(Level.FINE, "Unable to parse bewit");
+                metrics.countRejection(HawkMetrics.Rejection.PARSE_FAILURE);
+                requestContext.abortWith(createDefault401Response());
+                return;
+            }
+            if (bewit.getExp() <= now) {
+                LOG.log(Level.FINE, "Bewit for ID {0} has expired", bewit.getId());
+                metrics.countRejection(HawkMetrics.Rejection.CLOCK_SKEW);
+                requestContext.abortWith(createDefault401Response());
+                return;
+            }
+            String address = null;
+            if (failureLimiter != null) {
+                address = remoteAddress(requestContext);
+                if (isThrottled(requestContext, bewit.getId(), address)) {
+                    return;
+                }
+            }
+
+            long start = startTimer();
+            try {
+                credentials = hawkProvider instanceof AsyncHawkServerProvider
+                        ? await(((AsyncHawkServerProvider) hawkProvider).getHawkCredentialsAsync(realm, bewit.getId()))
+                        : hawkProvider.getHawkCredentials(realm, bewit.getId());
+            } catch (HawkProviderException e) {
+                LOG.log(Level.SEVERE, "Unable to get hawk credentials for Hawk ID: " + bewit.getId(), e);
+                requestContext.abortWith(create500Response());
+                return;
+            }
+            stopTimer(HawkMetrics.Stage.CREDENTIAL_LOOKUP, start);
+            if (credentials == null) {
+                metrics.countRejection(HawkMetrics.Rejection.UNKNOWN_ID);
+                recordFailure(bewit.getId(), address);
+                requestContext.abortWith(createDefault401Response());
+                return;
+            }
+
+            start = startTimer();
+            boolean validMac = HawkCrypto.isValidBewitMac(bewit.getMac(), credentials.getAlgorithm(),
+                    credentials.getPwd(), bewit.getExp(), resource, host, port, bewit.getExt());
+            stopTimer(HawkMetrics.Stage.MAC_VALIDATION, start);
+            if (!validMac) {
+                LOG.log(Level.WARNING, "Invalid bewit signature for ID {0} ", bewit.getId());
+                metrics.countRejection(HawkMetrics.Rejection.INVALID_MAC);
+                recordFailure(bewit.getId(), address);
+                requestContext.abortWith(createDefault401Response());
+                return;
+            }
+            if (bewitCache != null) {
+                bewitCache.put(key, credentials, bewit.getExp(), now);
+            }
+        }
+
+        requestContext.setSecurityContext(new HawkSecurityContext(requestContext.getSecurityContext().isSecure(), credentials.getProvidedUser()));
+    }
+
+    /**
+     * Reject the request with a 429 response if the failure limiter blocks the ID or address.
+     *
+     * @return true if the request has been rejected.
+     */
+    private boolean isThrottled(ContainerRequestContext requestContext, String id, String address) {
+        if (!failureLimiter.isBlocked(id, address)) {
+            return false;
+        }
+        LOG.log(Level.FINE, "Too many failures for ID {0} or address {1}", new String[]{id, address});
+        metrics.countRejection(HawkMetrics.Rejection.THROTTLED);
+        requestContext.abortWith(rejectResponses.tooManyRequests(failureLimiter.getRetryAfterSeconds()));
+        return true;
+    }
+
+    private void recordFailure(String id, String address) {
+        if (failureLimiter != null) {
+            failureLimiter.recordFailure(id, address);
+        }
+    }
+
+    private String remoteAddress(ContainerRequestContext requestContext) {
+        return remoteAddressResolver == null ? null : remoteAddressResolver.getRemoteAddress(requestContext);
+    }
+
+    private void rejectReplay(ContainerRequestContext requestContext, String id, long ts, String nonce) {
+        LOG.log(Level.FINE,
+                "Possible replay attack - nonce has been used before for ID: {0}, TS: {1}, Nonce: {2}",
+                new String[]{id, String.valueOf(ts), nonce});
+        metrics.countRejection(HawkMetrics.Rejection.REPLAY);
+        requestContext.abortWith(createDefault401Response());
+    }
+
+    /**
+     * Check that the nonce is present, not too long and consists of visible ASCII characters only.
+     */
+    private static boolean isWellFormedNonce(String nonce) {
+        if (nonce == null || nonce.length() == 0 || nonce.length() > MAX_NONCE_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < nonce.length(); i++) {
+            char c = nonce.charAt(i);
+            if (c <= ' ' || c > '~' || c == '"') {
+                return false;
+            }
+        }
+        return true;
     }
 
     /*
@@ -285,34 +834,115 @@ public class HawkServerFilter implements ContainerRequestFilter,
          */
         if (!requestHawk.hasHash()) {
             LOG.log(Level.FINE, "No payload hash in Authorization request header but configuration requires it");
+            metrics.countRejection(HawkMetrics.Rejection.INVALID_PAYLOAD_HASH);
             throw new WebApplicationException(createDefault401Response());
         }
 
-		/*
-		 * Hook buffering input stream into the reading chain and read the
-		 * entity. A copy of the data will be placed in the buffer. This buffer
-		 * is the used to calculate the hast.
-		 * https://github.com/algermissen/nioo-jaxrs-filter/issues/3
-		 */
-        InputStream old = context.getInputStream();
-        InputStreamBuffer streamBuffer = new InputStreamBuffer(old);
-        context.setInputStream(streamBuffer);
-        Object entity = context.proceed();
-        byte[] body = streamBuffer.getBuffer();
-
-        String hash = HawkContextBuilder.generateHash(requestHawk
-                .getAlgorithm(), body, context.getMediaType().toString());
-		/*
-		 * Compare calculated hash to the hash we received in the Authorization
-		 * header.
-		 */
+        /*
+         * Fail fast on bodies that announce a length above the limit.
+         */
+        if (maxRequestPayloadSize >= 0 && contentLength(context) > maxRequestPayloadSize) {
+            LOG.log(Level.FINE, "Request payload exceeds maximum size");
+            throw new WebApplicationException(Status.REQUEST_ENTITY_TOO_LARGE);
+        }
+
+        String mediaType = context.getMediaType() == null ? null : context.getMediaType().toString();
+        long start = startTimer();
+        Object entity;
+        String hash;
+        if (streamRequestPayload || (maxRequestPayloadSize >= 0 && requestBufferThreshold < 0)) {
+            /*
+             * Feed the body into the digest while the entity provider reads it.
+             * No copy of the body is kept. This is also the path for bodies with a
+             * maximum size, which must be counted while they are read.
+             */
+            HashingInputStream hashingStream = new HashingInputStream(context.getInputStream(),
+                    PayloadHash.start(requestHawk.getAlgorithm(), mediaType), maxRequestPayloadSize);
+            context.setInputStream(hashingStream);
+            try {
+                entity = context.proceed();
+                hash = hashingStream.finish();
+            } catch (PayloadTooLargeException e) {
+                throw new WebApplicationException(Status.REQUEST_ENTITY_TOO_LARGE);
+            } catch (RuntimeException e) {
+                /*
+                 * Entity providers may wrap the exception thrown by the stream.
+                 */
+                if (hashingStream.isTooLarge()) {
+                    throw new WebApplicationException(Status.REQUEST_ENTITY_TOO_LARGE);
+                }
+                throw e;
+            }
+        } else if (requestBufferThreshold >= 0) {
+            /*
+             * Read and hash the whole body before the entity provider sees it. Bytes
+             * beyond the threshold go to a temporary file.
+             */
+            SpillingBuffer buffer = new SpillingBuffer(requestBufferThreshold, maxRequestPayloadSize,
+                    PayloadHash.start(requestHawk.getAlgorithm(), mediaType));
+            try {
+                try {
+                    hash = buffer.readFrom(context.getInputStream());
+                } catch (PayloadTooLargeException e) {
+                    throw new WebApplicationException(Status.REQUEST_ENTITY_TOO_LARGE);
+                }
+                stopTimer(HawkMetrics.Stage.PAYLOAD_HASHING, start);
+                checkPayloadHash(hash, requestHawk);
+                context.setInputStream(buffer.getInputStream());
+                return context.proceed();
+            } finally {
+                buffer.close();
+            }
+        } else {
+            /*
+             * Hook buffering input stream into the reading chain and read the
+             * entity. A copy of the data will be placed in the buffer. This buffer
+             * is the used to calculate the hast.
+             * https://github.com/algermissen/nioo-jaxrs-filter/issues/3
+             */
+            InputStream old = context.getInputStream();
+            InputStreamBuffer streamBuffer = new InputStreamBuffer(old);
+            context.setInputStream(streamBuffer);
+            entity = context.proceed();
+            byte[] body = streamBuffer.getBuffer();
+
+            hash = reuseCryptoEngines
+                    ? HawkCrypto.payloadHash(requestHawk.getAlgorithm(), body, mediaType)
+                    : HawkContextBuilder.generateHash(requestHawk.getAlgorithm(), body, mediaType);
+        }
+        stopTimer(HawkMetrics.Stage.PAYLOAD_HASHING, start);
+        checkPayloadHash(hash, requestHawk);
+
+        // FIXME See https://github.com/algermissen/hawkj/issues/15
+        return entity;
+    }
+
+    /**
+     * Compare calculated hash to the hash we received in the Authorization header.
+     */
+    private void checkPayloadHash(String hash, HawkContext requestHawk) {
         if (!Util.fixedTimeEqual(hash, requestHawk.getHash())) {
             LOG.log(Level.SEVERE, "Payload hashes do not match");
+            metrics.countRejection(HawkMetrics.Rejection.INVALID_PAYLOAD_HASH);
             throw new WebApplicationException(createDefault401Response());
         }
+    }
 
-        // FIXME See https://github.com/algermissen/hawkj/issues/15
-        return entity;
+    /**
+     * Get the declared length of the request body.
+     *
+     * @return The Content-Length or -1 if it is absent or invalid.
+     */
+    private static long contentLength(ReaderInterceptorContext context) {
+        String value = context.getHeaders().getFirst(HttpHeaders.CONTENT_LENGTH);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     /*
@@ -325,6 +955,13 @@ public class HawkServerFilter implements ContainerRequestFilter,
     @Override
     public void filter(final ContainerRequestContext requestContext,
                        ContainerResponseContext responseContext) throws IOException {
+        if (tickets != null) {
+            HawkCredentials ticketCredentials = (HawkCredentials) requestContext.getProperty(TICKET_PROPERTY);
+            if (ticketCredentials != null
+                    && responseContext.getStatusInfo().getFamily() == Status.Family.SUCCESSFUL) {
+                responseContext.getHeaders().add(HawkTickets.TICKET_HEADER, tickets.issue(realm, ticketCredentials));
+            }
+        }
 		/*
 		 * Removing the Hawk from the context properties signals
 		 * WriterInterceptor to not add a Server-Authorization header for
@@ -366,11 +1003,65 @@ public class HawkServerFilter implements ContainerRequestFilter,
             return;
         }
 
+        long start = startTimer();
+        String mediaType = context.getMediaType().toString();
+        String cacheKey = responseHashCacheKey(context, requestHawk, mediaType);
+        if (cacheKey != null) {
+            String hash = responseHashCache.get(cacheKey, clock.currentTimeMillis());
+            if (hash != null) {
+                /*
+                 * The body is known, write it without buffering or hashing.
+                 */
+                addServerAuthorization(context, requestHawk, hash);
+                context.proceed();
+                stopTimer(HawkMetrics.Stage.PAYLOAD_HASHING, start);
+                return;
+            }
+        }
+
+        String fileHash = hashFileEntity(context, requestHawk, mediaType);
+        if (fileHash != null) {
+            /*
+             * The header is in place, the entity provider streams the file.
+             */
+            cacheResponseHash(cacheKey, fileHash);
+            context.proceed();
+            stopTimer(HawkMetrics.Stage.PAYLOAD_HASHING, start);
+            return;
+        }
+
+        OutputStream old = context.getOutputStream();
+        if (responseBufferLimit >= 0) {
+            /*
+             * Hash the body while it is written and hold it back only up to the
+             * configured limit.
+             */
+            ResponseHashingOutputStream hashingStream = new ResponseHashingOutputStream(old,
+                    context.getHeaders(), requestHawk,
+                    PayloadHash.start(requestHawk.getAlgorithm(), mediaType),
+                    responseBufferLimit, streamUnhashedResponses);
+            context.setOutputStream(hashingStream);
+            try {
+                context.proceed();
+            } catch (ResponseHashingOutputStream.LimitExceededException e) {
+                LOG.log(Level.WARNING, "Unable to hash response payload", e);
+                metrics.countOversizedResponse(false);
+                throw new WebApplicationException(create500Response());
+            }
+            hashingStream.finish();
+            if (hashingStream.isStreaming()) {
+                LOG.log(Level.FINE, "Response body exceeds the buffer limit, sent without payload hash");
+                metrics.countOversizedResponse(true);
+            }
+            cacheResponseHash(cacheKey, hashingStream.getHash());
+            stopTimer(HawkMetrics.Stage.PAYLOAD_HASHING, start);
+            return;
+        }
+
 		/*
 		 * Buffer output stream to calculate hash.
 		 * https://github.com/algermissen/nioo-jaxrs-filter/issues/3
 		 */
-        OutputStream old = context.getOutputStream();
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         context.setOutputStream(baos);
         context.proceed();
@@ -381,11 +1072,155 @@ public class HawkServerFilter implements ContainerRequestFilter,
 		 * Make a clone of the request Hawk, add the hash value and construct
 		 * Server-Authorization header from it.
 		 */
-        HawkContext responseHawk = requestHawk.cloneC()
-                .body(body, context.getMediaType().toString()).build();
-        context.getHeaders().add(HawkContext.SERVER_AUTHORIZATION,
-                responseHawk.createAuthorizationHeader().toString());
+        String hash = reuseCryptoEngines
+                ? HawkCrypto.payloadHash(requestHawk.getAlgorithm(), body, mediaType)
+                : HawkContextBuilder.generateHash(requestHawk.getAlgorithm(), body, mediaType);
+        cacheResponseHash(cacheKey, hash);
+        addServerAuthorization(context, requestHawk, hash);
         old.write(body);
+        stopTimer(HawkMetrics.Stage.PAYLOAD_HASHING, start);
+    }
+
+    private static void addServerAuthorization(WriterInterceptorContext context, HawkContext requestHawk,
+                                               String hash) {
+        context.getHeaders().add(HawkContext.SERVER_AUTHORIZATION,
+                requestHawk.cloneC().hash(hash).build().createAuthorizationHeader().toString());
+    }
+
+    /**
+     * Build the response hash cache key from the version property or a strong ETag.
+     * The key covers the raw path and query, because an ETag only identifies a body
+     * among the representations of one URI.
+     *
+     * @return The key or null if there is no cache or the body cannot be identified.
+     */
+    private String responseHashCacheKey(WriterInterceptorContext context, HawkContext requestHawk,
+                                        String mediaType) {
+        if (responseHashCache == null) {
+            return null;
+        }
+        Object version = context.getProperty(RESPONSE_VERSION_PROPERTY);
+        if (version == null) {
+            Object etag = context.getHeaders().getFirst(HttpHeaders.ETAG);
+            if (etag instanceof EntityTag) {
+                EntityTag entityTag = (EntityTag) etag;
+                version = entityTag.isWeak() ? null : "\"" + entityTag.getValue() + "\"";
+            } else if (etag != null && !etag.toString().startsWith("W/")) {
+                version = etag;
+            }
+        }
+        if (version == null) {
+            return null;
+        }
+        Object resource = context.getProperty(RESOURCE_PROPERTY);
+        if (resource == null) {
+            return null;
+        }
+        return requestHawk.getAlgorithm() + " " + mediaType + " " + requestHawk.getHost() + ":"
+                + requestHawk.getPort() + resource + " " + version;
+    }
+
+    private void cacheResponseHash(String cacheKey, String hash) {
+        if (cacheKey != null && hash != null) {
+            responseHashCache.put(cacheKey, hash, clock.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Add the Server-Authorization header for File and FileInputStream entities by
+     * hashing the file through a reused direct buffer instead of a buffered copy. The
+     * entity provider still writes the body, so other interceptors and the container's
+     * own transfer of the file remain in effect.
+     *
+     * @return The payload hash or null if the entity is not a file.
+     */
+    private String hashFileEntity(WriterInterceptorContext context, HawkContext requestHawk, String mediaType)
+            throws IOException {
+        Object entity = context.getEntity();
+        if (!(entity instanceof File || entity instanceof FileInputStream)) {
+            return null;
+        }
+        MessageDigest digest = PayloadHash.start(requestHawk.getAlgorithm(), mediaType);
+        if (entity instanceof File) {
+            FileInputStream in = new FileInputStream((File) entity);
+            try {
+                PayloadHash.update(digest, in.getChannel(), 0);
+            } finally {
+                in.close();
+            }
+        } else {
+            FileChannel channel = ((FileInputStream) entity).getChannel();
+            PayloadHash.update(digest, channel, channel.position());
+        }
+        String hash = PayloadHash.finish(digest);
+        addServerAuthorization(context, requestHawk, hash);
+        return hash;
+    }
+
+    /**
+     * Wait for the result of an asynchronous provider call.
+     *
+     * @throws HawkProviderException if the call failed or did not complete in time.
+     */
+    private <T> T await(Future<T> future) throws HawkProviderException {
+        return await(future, asyncProviderTimeout);
+    }
+
+    /**
+     * Wait at most timeoutMillis for the result of an asynchronous provider call,
+     * cancelling the call if it does not complete in time.
+     *
+     * @throws HawkProviderException if the call failed or did not complete in time.
+     */
+    static <T> T await(Future<T> future, long timeoutMillis) throws HawkProviderException {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof HawkProviderException) {
+                throw (HawkProviderException) e.getCause();
+            }
+            throw new HawkProviderException("Asynchronous provider call failed", e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new HawkProviderException("Asynchronous provider call timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HawkProviderException("Interrupted while waiting for provider", e);
+        }
+    }
+
+    /**
+     * Start measuring a stage if metrics are enabled.
+     *
+     * @return The start time or 0 if metrics are disabled.
+     */
+    private long startTimer() {
+        return timed ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Report the time elapsed since start if metrics are enabled.
+     */
+    private void stopTimer(HawkMetrics.Stage stage, long start) {
+        if (timed) {
+            metrics.recordTime(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Note the nonce with a blocking provider. Atomic providers check and note in one
+     * call; plain providers have been asked before the credential lookup and are only
+     * told to note the nonce.
+     *
+     * @return true if the nonce had not been used before.
+     * @throws HawkProviderException
+     */
+    private boolean noteNonce(String id, long ts, String nonce) throws HawkProviderException {
+        if (hawkProvider instanceof AtomicNonceHawkServerProvider) {
+            return ((AtomicNonceHawkServerProvider) hawkProvider).noteNonceIfAbsent(id, ts, nonce);
+        }
+        hawkProvider.noteNonce(id, ts, nonce);
+        return true;
     }
 
     /**
@@ -394,9 +1229,9 @@ public class HawkServerFilter implements ContainerRequestFilter,
      * @param requestContext
      * @return A valid port number to use for validation
      */
-    private static int determineValidationPort(ContainerRequestContext requestContext, HawkServerProvider hawkServerProvider) {
+    private static int determineValidationPort(ContainerRequestContext requestContext, HawkServerConfig config) {
 
-        int port = hawkServerProvider.getConfiguredValidationPort();
+        int port = config.getValidationPort();
         if (port >= 0) {
             return port;
         }
@@ -417,9 +1252,9 @@ public class HawkServerFilter implements ContainerRequestFilter,
      * @param requestContext
      * @return a hostname to use for validation.
      */
-    private static String determineValidationHost(ContainerRequestContext requestContext, HawkServerProvider hawkServerProvider) {
+    private static String determineValidationHost(ContainerRequestContext requestContext, HawkServerConfig config) {
 
-        String host = hawkServerProvider.getConfiguredValidationHost();
+        String host = config.getValidationHost();
         if (host != null) {
             return host;
         }
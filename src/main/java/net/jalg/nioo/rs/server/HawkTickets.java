@@ -0,0 +1,235 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+import net.jalg.jiron.Iron;
+import net.jalg.jiron.IronUnsealException;
+import net.jalg.jiron.Options;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.Principal;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** Iron-sealed session tickets that carry a client's Hawk credentials.
+ *
+ * After a client has been authenticated, the filter issues a ticket in the
+ * {@link #TICKET_HEADER} response header. The ticket is sealed with a server side
+ * password and contains the client's ID, key and algorithm, the principal name and
+ * those of the configured roles the user is in, together with an expiry time. When the
+ * client sends the ticket back with later requests, the filter takes the credentials
+ * from the ticket instead of calling HawkServerProvider.getHawkCredentials(). The
+ * request MAC is still validated as usual.
+ * <p>
+ * Recently unsealed tickets are cached, so repeated requests with the same ticket do
+ * not need to unseal it again.
+ * <p>
+ * Note that credential changes at the provider only take effect for a client once its
+ * ticket has expired.
+ */
+public class HawkTickets {
+
+    /**
+     * Name of the request and response header carrying the ticket.
+     */
+    public static final String TICKET_HEADER = "Hawk-Ticket";
+
+    private static final Logger LOG = Logger.getLogger(HawkTickets.class.getName());
+
+    private final String password;
+
+    private final long lifetimeMillis;
+
+    private final Collection<String> roles;
+
+    private final BoundedCache<String, TicketCredentials> cache;
+
+    private volatile HawkClock clock = HawkClock.SYSTEM;
+
+    /**
+     * Create a new ticket issuer.
+     *
+     * @param password The password to seal tickets with. Must be at least 32 characters long.
+     * @param lifetimeMillis Time for which an issued ticket is valid.
+     * @param cacheSize Maximum number of unsealed tickets to cache.
+     * @param roles The roles to record in the ticket. ProvidedUser does not allow
+     *              enumerating roles, so only these roles are available to the
+     *              SecurityContext of requests authenticated by a ticket.
+     */
+    public HawkTickets(String password, long lifetimeMillis, int cacheSize, Collection<String> roles) {
+        if (password == null || password.length() < 32) {
+            throw new IllegalArgumentException("Ticket password must be at least 32 characters long");
+        }
+        this.password = password;
+        this.lifetimeMillis = lifetimeMillis;
+        this.cache = new BoundedCache<String, TicketCredentials>(cacheSize);
+        this.roles = roles;
+    }
+
+    /**
+     * Set the clock that ticket expiry is based on. The default is
+     * {@link HawkClock#SYSTEM}.
+     *
+     * @param clock
+     */
+    public void setClock(HawkClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Create a sealed ticket for the given credentials.
+     *
+     * @param realm The realm the credentials have been looked up for (can be null).
+     * @param credentials
+     * @return The sealed ticket.
+     */
+    String issue(String realm, HawkCredentials credentials) {
+        ProvidedUser user = credentials.getProvidedUser();
+        JSONArray userRoles = new JSONArray();
+        for (String role : roles) {
+            if (user.isInRole(role)) {
+                userRoles.put(role);
+            }
+        }
+        try {
+            JSONObject ticket = new JSONObject();
+            ticket.put("realm", realm == null ? "" : realm);
+            ticket.put("id", credentials.getId());
+            ticket.put("key", credentials.getPwd());
+            ticket.put("algorithm", credentials.getAlgorithm().name());
+            ticket.put("user", user.getPrincipal().getName());
+            ticket.put("roles", userRoles);
+            ticket.put("exp", clock.currentTimeMillis() + lifetimeMillis);
+            return Iron.seal(ticket.toString(), password, Options.DEFAULT);
+        } catch (JSONException e) {
+            throw new IllegalStateException("Unable to create ticket", e);
+        }
+    }
+
+    /**
+     * Get the credentials from a ticket.
+     *
+     * @param realm The realm of the protected resource (can be null).
+     * @param ticket The sealed ticket.
+     * @return The credentials or null if the ticket is invalid, expired or has been issued for another realm.
+     */
+    HawkCredentials redeem(String realm, String ticket) {
+        long now = clock.currentTimeMillis();
+        TicketCredentials credentials = cache.get(ticket);
+        if (credentials == null) {
+            credentials = unseal(ticket);
+            if (credentials == null) {
+                return null;
+            }
+            cache.putIfAbsent(ticket, credentials, now);
+        }
+        if (credentials.isExpired(now)) {
+            cache.remove(ticket, credentials);
+            return null;
+        }
+        if (!credentials.realm.equals(realm == null ? "" : realm)) {
+            return null;
+        }
+        return credentials;
+    }
+
+    private TicketCredentials unseal(String ticket) {
+        try {
+            JSONObject json = new JSONObject(Iron.unseal(ticket, password, Options.DEFAULT));
+            Set<String> userRoles = new HashSet<String>();
+            JSONArray array = json.getJSONArray("roles");
+            for (int i = 0; i < array.length(); i++) {
+                userRoles.add(array.getString(i));
+            }
+            return new TicketCredentials(json.getString("realm"), json.getString("id"), json.getString("key"),
+                    Algorithm.valueOf(json.getString("algorithm")),
+                    new TicketUser(json.getString("user"), userRoles), json.getLong("exp"));
+        } catch (IronUnsealException e) {
+            LOG.log(Level.FINE, "Unable to unseal ticket", e);
+        } catch (JSONException e) {
+            LOG.log(Level.FINE, "Invalid ticket content", e);
+        } catch (IllegalArgumentException e) {
+            LOG.log(Level.FINE, "Invalid ticket algorithm", e);
+        }
+        return null;
+    }
+
+    private static final class TicketCredentials extends BoundedCache.Entry implements HawkCredentials {
+        private final String realm;
+        private final String id;
+        private final String pwd;
+        private final Algorithm algorithm;
+        private final ProvidedUser user;
+        private final long expires;
+
+        private TicketCredentials(String realm, String id, String pwd, Algorithm algorithm, ProvidedUser user,
+                                  long expires) {
+            this.realm = realm;
+            this.id = id;
+            this.pwd = pwd;
+            this.algorithm = algorithm;
+            this.user = user;
+            this.expires = expires;
+        }
+
+        @Override
+        long evictionRank() {
+            return expires;
+        }
+
+        @Override
+        boolean isExpired(long now) {
+            return expires <= now;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getPwd() {
+            return pwd;
+        }
+
+        @Override
+        public Algorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public ProvidedUser getProvidedUser() {
+            return user;
+        }
+    }
+
+    private static final class TicketUser implements ProvidedUser {
+        private final Principal principal;
+        private final Set<String> roles;
+
+        private TicketUser(final String name, Set<String> roles) {
+            this.principal = new Principal() {
+                @Override
+                public String getName() {
+                    return name;
+                }
+            };
+            this.roles = roles;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return principal;
+        }
+
+        @Override
+        public boolean isInRole(String role) {
+            return roles.contains(role);
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+package net.jalg.nioo.rs.server;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+
+/** Response payload hashing part of a {@link HawkServerFilter}.
+ */
+@Priority(Priorities.AUTHENTICATION)
+final class HawkWriterInterceptor implements WriterInterceptor {
+
+    private final HawkServerFilter filter;
+
+    HawkWriterInterceptor(HawkServerFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        filter.aroundWriteTo(context);
+    }
+
+}
@@ -0,0 +1,87 @@
+package net.jalg.nioo.rs.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** In-memory NonceStore that keeps nonces in time buckets.
+ *
+ * There is one bucket per second of the allowed clock skew window; a bucket
+ * holds all nonces that have been used with the timestamp of that second.
+ * Buckets are arranged in a ring and a bucket is replaced as a whole once its
+ * second has left the window, so there is no expiry scan over single entries.
+ * <p>
+ * Buckets are swapped using compare-and-set and each bucket is a
+ * ConcurrentHashMap, so nonces can be noted and checked concurrently without
+ * a global lock.
+ * <p>
+ * Nonces with timestamps outside the clock skew window cannot be tracked and
+ * are therefore reported as having been used before.
+ */
+public class InMemoryNonceStore implements NonceStore {
+
+    private final SecondRing<ConcurrentMap<String, Boolean>> buckets;
+
+    private volatile HawkClock clock = HawkClock.SYSTEM;
+
+    /**
+     * Create a new store for the given clock skew.
+     *
+     * @param allowedClockSkew The allowed clock skew in seconds, usually the value of
+     *                         HawkServerProvider.getAllowedClockSkew(). Must be greater than 0.
+     */
+    public InMemoryNonceStore(int allowedClockSkew) {
+        final int concurrencyLevel = Runtime.getRuntime().availableProcessors();
+        this.buckets = new SecondRing<ConcurrentMap<String, Boolean>>(allowedClockSkew,
+                new SecondRing.Factory<ConcurrentMap<String, Boolean>>() {
+                    @Override
+                    public ConcurrentMap<String, Boolean> create(long ts) {
+                        return new ConcurrentHashMap<String, Boolean>(16, 0.75f, concurrencyLevel);
+                    }
+                });
+    }
+
+    /**
+     * Set the clock that decides which timestamps are inside the window. The default is
+     * {@link HawkClock#SYSTEM}.
+     *
+     * @param clock
+     */
+    public void setClock(HawkClock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public void noteNonce(String id, long ts, String nonce) {
+        ConcurrentMap<String, Boolean> bucket = buckets.getOrCreate(ts, nowSeconds());
+        if (bucket != null) {
+            bucket.put(key(id, nonce), Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) {
+        if (!buckets.isInWindow(ts, nowSeconds())) {
+            return true;
+        }
+        ConcurrentMap<String, Boolean> bucket = buckets.get(ts);
+        return bucket != null && bucket.containsKey(key(id, nonce));
+    }
+
+    @Override
+    public boolean noteNonceIfAbsent(String id, long ts, String nonce) {
+        ConcurrentMap<String, Boolean> bucket = buckets.getOrCreate(ts, nowSeconds());
+        if (bucket == null) {
+            return false;
+        }
+        return bucket.putIfAbsent(key(id, nonce), Boolean.TRUE) == null;
+    }
+
+    private long nowSeconds() {
+        return clock.currentTimeMillis() / 1000L;
+    }
+
+    private static String key(String id, String nonce) {
+        return id + '\n' + nonce;
+    }
+
+}
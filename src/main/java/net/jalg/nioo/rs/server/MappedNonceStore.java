@@ -0,0 +1,255 @@
+package net.jalg.nioo.rs.server;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.SecureRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** NonceStore that keeps nonces in a memory-mapped file, so that they survive restarts.
+ *
+ * An in-memory store forgets all nonces when the server restarts, which allows requests
+ * to be replayed if the restart happens within the clock skew window. This store writes
+ * nonces to a fixed-size open addressing table in a memory-mapped file instead. Each slot
+ * holds a 64 bit fingerprint of ID, timestamp and nonce together with the timestamp.
+ * Slots whose timestamp has left the clock skew window are reused, so the file never
+ * grows. Writes go to the operating system's page cache and therefore survive a crash of
+ * the process; call {@link #force()} to also write them to the disk.
+ * <p>
+ * The table is divided into regions of 64 slots. An entry is only stored in the region
+ * its fingerprint selects, and each region is guarded by one of a fixed number of locks.
+ * The fingerprint is seeded with a random value that is generated when the file is created
+ * and kept in its header, so clients cannot choose nonces that all fall into one region.
+ * Expired slots of a region are reused before a nonce is rejected. If all slots of a region
+ * hold nonces that are still within the window, the store cannot
+ * track another nonce and noteNonceIfAbsent() fails with a HawkProviderException. The
+ * capacity should therefore be a few times the number of requests expected within twice
+ * the allowed clock skew.
+ * <p>
+ * Nonces with timestamps outside the clock skew window are reported as having been used
+ * before.
+ */
+public class MappedNonceStore implements NonceStore, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(MappedNonceStore.class.getName());
+
+    private static final int MAGIC = 0x48574b4e; // "HWKN"
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int SLOT_SIZE = 16;
+
+    private static final int REGION_SIZE = 64;
+
+    private static final int MAX_LOCKS = 1024;
+
+    private final int allowedClockSkew;
+
+    private final int regions;
+
+    private final long seed;
+
+    private final RandomAccessFile file;
+
+    private final MappedByteBuffer buffer;
+
+    private final Object[] locks;
+
+    private volatile HawkClock clock = HawkClock.SYSTEM;
+
+    /**
+     * Open or create a store.
+     *
+     * @param path The file to keep the nonces in. It is created if it does not exist.
+     * @param capacity The number of nonces the file can hold. Rounded up to a multiple of 64.
+     *                 Must match the capacity the file has been created with.
+     * @param allowedClockSkew The allowed clock skew in seconds, usually the value of
+     *                         HawkServerProvider.getAllowedClockSkew(). Must be greater than 0.
+     * @throws IOException If the file cannot be mapped or has been created with another capacity.
+     */
+    public MappedNonceStore(File path, int capacity, int allowedClockSkew) throws IOException {
+        if (allowedClockSkew <= 0) {
+            throw new IllegalArgumentException("Allowed clock skew must be greater than 0, got " + allowedClockSkew);
+        }
+        if (capacity <= 0 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE - REGION_SIZE) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        this.allowedClockSkew = allowedClockSkew;
+        this.regions = (capacity + REGION_SIZE - 1) / REGION_SIZE;
+        int slots = regions * REGION_SIZE;
+        long size = HEADER_SIZE + (long) slots * SLOT_SIZE;
+
+        this.file = new RandomAccessFile(path, "rw");
+        try {
+            boolean created = file.length() == 0;
+            if (!created && file.length() != size) {
+                throw new IOException(path + " has been created with another capacity");
+            }
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (created) {
+                buffer.putLong(8, new SecureRandom().nextLong());
+                buffer.putInt(4, slots);
+                buffer.putInt(0, MAGIC);
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != slots) {
+                throw new IOException(path + " is not a nonce store with capacity " + slots);
+            }
+            this.seed = buffer.getLong(8);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        this.locks = new Object[Math.min(regions, MAX_LOCKS)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Set the clock that decides which timestamps are inside the window and which
+     * entries have expired. The default is
+     * {@link HawkClock#SYSTEM}.
+     *
+     * @param clock
+     */
+    public void setClock(HawkClock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public void noteNonce(String id, long ts, String nonce) {
+        try {
+            noteNonceIfAbsent(id, ts, nonce);
+        } catch (HawkProviderException e) {
+            LOG.log(Level.WARNING, "Unable to note nonce", e);
+        }
+    }
+
+    @Override
+    public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) {
+        long now = clock.currentTimeMillis() / 1000L;
+        if (!SecondRing.isInWindow(ts, now, allowedClockSkew)) {
+            return true;
+        }
+        long fingerprint = fingerprint(seed, id, ts, nonce);
+        int region = region(fingerprint);
+        synchronized (locks[region % locks.length]) {
+            return find(region, fingerprint, ts) >= 0;
+        }
+    }
+
+    @Override
+    public boolean noteNonceIfAbsent(String id, long ts, String nonce) throws HawkProviderException {
+        long now = clock.currentTimeMillis() / 1000L;
+        if (!SecondRing.isInWindow(ts, now, allowedClockSkew)) {
+            return false;
+        }
+        long fingerprint = fingerprint(seed, id, ts, nonce);
+        int region = region(fingerprint);
+        int first = region * REGION_SIZE;
+        int start = (int) (fingerprint >>> 32) & (REGION_SIZE - 1);
+        synchronized (locks[region % locks.length]) {
+            if (find(region, fingerprint, ts) >= 0) {
+                return false;
+            }
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < REGION_SIZE; i++) {
+                    int offset = offset(first + ((start + i) & (REGION_SIZE - 1)));
+                    if (buffer.getLong(offset) == 0L) {
+                        buffer.putLong(offset + 8, ts);
+                        buffer.putLong(offset, fingerprint);
+                        return true;
+                    }
+                }
+                if (evictExpired(region, now) == 0) {
+                    break;
+                }
+            }
+        }
+        throw new HawkProviderException("Nonce store region full, capacity too small for request rate");
+    }
+
+    /**
+     * Write all noted nonces to the disk.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Write all noted nonces to the disk and close the file. The store must not be
+     * used afterwards.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    /**
+     * Find the slot holding the given entry. Must be called holding the region's lock.
+     *
+     * @return The slot or -1 if the entry is not in the table.
+     */
+    private int find(int region, long fingerprint, long ts) {
+        int first = region * REGION_SIZE;
+        int start = (int) (fingerprint >>> 32) & (REGION_SIZE - 1);
+        for (int i = 0; i < REGION_SIZE; i++) {
+            int slot = first + ((start + i) & (REGION_SIZE - 1));
+            int offset = offset(slot);
+            if (buffer.getLong(offset) == fingerprint && buffer.getLong(offset + 8) == ts) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Clear all slots of a region whose timestamps have left the window. Must be
+     * called holding the region's lock.
+     *
+     * @return The number of slots cleared.
+     */
+    private int evictExpired(int region, long now) {
+        long oldest = now - allowedClockSkew - SecondRing.WINDOW_SLACK;
+        int first = region * REGION_SIZE;
+        int evicted = 0;
+        for (int i = 0; i < REGION_SIZE; i++) {
+            int offset = offset(first + i);
+            if (buffer.getLong(offset) != 0L && buffer.getLong(offset + 8) < oldest) {
+                buffer.putLong(offset, 0L);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private int region(long fingerprint) {
+        return (int) ((fingerprint & 0x7fffffffL) % regions);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * FNV-1a hash of ID, timestamp and nonce, started from the seeded offset basis,
+     * with the seed mixed in again before the avalanche step.
+     * Never returns 0, which marks an empty slot.
+     */
+    private static long fingerprint(long seed, String id, long ts, String nonce) {
+        long h = Fnv64.update(Fnv64.OFFSET_BASIS ^ seed, id);
+        h = Fnv64.update(h, '\n');
+        h = Fnv64.updateLong(h, ts);
+        h = Fnv64.update(h, '\n');
+        h = Fnv64.update(h, nonce);
+        h = Fnv64.finish(h ^ seed);
+        return h == 0L ? 1L : h;
+    }
+
+}
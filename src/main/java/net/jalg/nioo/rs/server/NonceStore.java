@@ -0,0 +1,40 @@
+package net.jalg.nioo.rs.server;
+
+/** Storage for nonces used by Hawk clients.
+ *
+ * HawkServerProvider implementations can delegate their nonce handling
+ * to a NonceStore instead of implementing replay detection themselves.
+ */
+public interface NonceStore {
+
+    /** Note a used nonce.
+     *
+     * @param id Hawk ID the nonce has been used with
+     * @param ts Timestamp of the request
+     * @param nonce the nonce
+     */
+    public void noteNonce(String id, long ts, String nonce);
+
+    /**
+     * Check whether the provided nonce has been used before.
+     *
+     * @param id Hawk ID the nonce has been used with
+     * @param ts Timestamp of the request
+     * @param nonce the nonce
+     * @return true if this nonce has been used before.
+     * @throws HawkProviderException
+     */
+    public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) throws HawkProviderException;
+
+    /**
+     * Atomically note the nonce unless it has been used before.
+     *
+     * @param id Hawk ID the nonce has been used with
+     * @param ts Timestamp of the request
+     * @param nonce the nonce
+     * @return true if the nonce had not been used before and has now been noted.
+     * @throws HawkProviderException
+     */
+    public boolean noteNonceIfAbsent(String id, long ts, String nonce) throws HawkProviderException;
+
+}
@@ -0,0 +1,152 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** Incremental calculation of Hawk payload hashes.
+ *
+ * The payload hash is calculated over the normalized string
+ * <pre>
+ * hawk.1.payload\n
+ * content-type\n
+ * body\n
+ * </pre>
+ * where content-type is the lower case media type without parameters. This class
+ * allows the body to be fed into the digest as it is read or written instead of
+ * buffering it first.
+ */
+final class PayloadHash {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] PREFIX = "hawk.1.payload\n".getBytes(UTF_8);
+
+    private static final byte NEWLINE = (byte) '\n';
+
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> FILE_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(FILE_BUFFER_SIZE);
+        }
+    };
+
+    private PayloadHash() {
+    }
+
+    /**
+     * Create a new digest for the given algorithm and feed the normalized
+     * string prefix for the given content type into it.
+     *
+     * @param algorithm
+     * @param contentType The content type of the payload, can be null.
+     * @return The digest, ready to be updated with the payload bytes.
+     */
+    static MessageDigest start(Algorithm algorithm, String contentType) {
+        MessageDigest digest = createDigest(algorithm);
+        start(digest, contentType);
+        return digest;
+    }
+
+    /**
+     * Reset the given digest and feed the normalized string prefix for the given
+     * content type into it.
+     *
+     * @param digest
+     * @param contentType The content type of the payload, can be null.
+     */
+    static void start(MessageDigest digest, String contentType) {
+        digest.reset();
+        digest.update(PREFIX);
+        digest.update(normalizeContentType(contentType).getBytes(UTF_8));
+        digest.update(NEWLINE);
+    }
+
+    /**
+     * Complete the hash calculation after all payload bytes have been fed into the digest.
+     *
+     * @param digest
+     * @return The base64 encoded payload hash.
+     */
+    static String finish(MessageDigest digest) {
+        digest.update(NEWLINE);
+        return DatatypeConverter.printBase64Binary(digest.digest());
+    }
+
+    /**
+     * Feed the content of a file from the given position to its end into the digest.
+     * The file is read through a direct buffer that is reused per thread, so that its
+     * content is neither copied onto the heap nor left mapped until the buffers are
+     * garbage collected. The position of the channel is not changed.
+     *
+     * @param digest
+     * @param channel
+     * @param position The offset of the first byte to hash.
+     * @throws IOException
+     */
+    static void update(MessageDigest digest, FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = FILE_BUFFER.get();
+        long size = channel.size();
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                break;
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += n;
+        }
+    }
+
+    /**
+     * Create a new MessageDigest for the given Hawk algorithm.
+     *
+     * @param algorithm
+     * @return A new digest instance.
+     */
+    static MessageDigest createDigest(Algorithm algorithm) {
+        try {
+            return MessageDigest.getInstance(digestName(algorithm));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Digest algorithm not available for " + algorithm, e);
+        }
+    }
+
+    /**
+     * Map a Hawk algorithm to the JCA name of its message digest.
+     *
+     * @param algorithm
+     * @return JCA digest name
+     */
+    static String digestName(Algorithm algorithm) {
+        switch (algorithm) {
+            case SHA_1:
+                return "SHA-1";
+            case SHA_256:
+                return "SHA-256";
+            default:
+                throw new IllegalArgumentException("Unsupported algorithm " + algorithm);
+        }
+    }
+
+    private static String normalizeContentType(String contentType) {
+        if (contentType == null) {
+            return "";
+        }
+        int semicolon = contentType.indexOf(';');
+        if (semicolon >= 0) {
+            contentType = contentType.substring(0, semicolon);
+        }
+        return contentType.trim().toLowerCase();
+    }
+
+}
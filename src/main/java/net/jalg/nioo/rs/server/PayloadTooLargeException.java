@@ -0,0 +1,18 @@
+package net.jalg.nioo.rs.server;
+
+import java.io.IOException;
+
+/** Signals that a request body exceeds the configured maximum payload size.
+ */
+class PayloadTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param maxSize The configured maximum size in bytes.
+     */
+    PayloadTooLargeException(long maxSize) {
+        super("Request payload exceeds maximum size of " + maxSize + " bytes");
+    }
+
+}
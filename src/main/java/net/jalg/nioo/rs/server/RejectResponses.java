@@ -0,0 +1,95 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.HawkContext;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.nio.charset.Charset;
+
+/** Precomputed parts of the 401 and 500 responses of the filters of one realm.
+ *
+ * Requests are rejected far more often than they are served when clients guess
+ * credentials, so the challenge header value and the response bodies are built once.
+ * A JAX-RS Response cannot be shared between requests because filters may modify its
+ * headers, so each call still builds a small Response from the shared parts.
+ */
+final class RejectResponses {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private final String challenge;
+
+    private final String staleTimestampChallengeStart;
+
+    private final byte[] unauthorizedEntity = "Unable to authorize request.".getBytes(UTF_8);
+
+    private final byte[] tooManyRequestsEntity = "Too many failed attempts.".getBytes(UTF_8);
+
+    private final byte[] serverErrorEntity = "Internal Server Error".getBytes(UTF_8);
+
+    /**
+     * Create the responses for a realm.
+     *
+     * @param realm The realm to name in the challenge or null for none.
+     */
+    RejectResponses(String realm) {
+        this.challenge = realm == null ? HawkContext.SCHEME : HawkContext.SCHEME + " realm=\"" + realm + "\"";
+        this.staleTimestampChallengeStart = (realm == null ? challenge + " " : challenge + ", ") + "ts=\"";
+    }
+
+    /**
+     * Create a 401 response with the realm's default challenge.
+     */
+    Response unauthorized() {
+        return Response.status(Status.UNAUTHORIZED)
+                .header(HttpHeaders.WWW_AUTHENTICATE, challenge)
+                .type(MediaType.TEXT_PLAIN_TYPE).entity(unauthorizedEntity)
+                .build();
+    }
+
+    /**
+     * Create a 401 response with the given challenge.
+     */
+    Response unauthorized(String challenge) {
+        return Response.status(Status.UNAUTHORIZED)
+                .header(HttpHeaders.WWW_AUTHENTICATE, challenge)
+                .type(MediaType.TEXT_PLAIN_TYPE).entity(unauthorizedEntity)
+                .build();
+    }
+
+    /**
+     * Create a 401 response with an unsigned challenge that gives the client the
+     * server time. Without the tsm signature, clients cannot trust the time.
+     *
+     * @param now The server time in seconds.
+     */
+    Response staleTimestamp(int now) {
+        return unauthorized(staleTimestampChallengeStart + now + "\", error=\"Stale timestamp\"");
+    }
+
+    /**
+     * Create a 429 response asking the client to retry after the given time.
+     */
+    Response tooManyRequests(int retryAfterSeconds) {
+        return Response.status(TOO_MANY_REQUESTS)
+                .header(RETRY_AFTER, retryAfterSeconds)
+                .type(MediaType.TEXT_PLAIN_TYPE).entity(tooManyRequestsEntity)
+                .build();
+    }
+
+    /**
+     * Create a 500 response.
+     */
+    Response serverError() {
+        return Response.status(Status.INTERNAL_SERVER_ERROR)
+                .type(MediaType.TEXT_PLAIN_TYPE).entity(serverErrorEntity)
+                .build();
+    }
+
+}
@@ -0,0 +1,38 @@
+package net.jalg.nioo.rs.server;
+
+import javax.ws.rs.container.ContainerRequestContext;
+
+/** Determines the address of the client that sent a request.
+ *
+ * JAX-RS 2.0 does not expose the remote address, so the {@link FailureLimiter} relies on
+ * an implementation of this interface to limit failures per client address. Implementations
+ * typically read a header set by a trusted proxy or access the container's request object.
+ */
+public interface RemoteAddressResolver {
+
+    /**
+     * Resolver that takes the last entry of the X-Forwarded-For header, which is the address
+     * seen by the closest proxy. Only use this if all requests pass through a proxy that
+     * appends to that header; otherwise clients can choose their own address.
+     */
+    public static final RemoteAddressResolver X_FORWARDED_FOR = new RemoteAddressResolver() {
+        @Override
+        public String getRemoteAddress(ContainerRequestContext requestContext) {
+            String forwardedFor = requestContext.getHeaderString("X-Forwarded-For");
+            if (forwardedFor == null) {
+                return null;
+            }
+            String address = forwardedFor.substring(forwardedFor.lastIndexOf(',') + 1).trim();
+            return address.length() == 0 ? null : address;
+        }
+    };
+
+    /**
+     * Get the address of the client.
+     *
+     * @param requestContext
+     * @return The address or null if it cannot be determined.
+     */
+    public String getRemoteAddress(ContainerRequestContext requestContext);
+
+}
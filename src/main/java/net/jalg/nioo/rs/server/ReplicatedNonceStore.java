@@ -0,0 +1,480 @@
+package net.jalg.nioo.rs.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** NonceStore that shares nonces between the nodes of a cluster.
+ *
+ * Behind a load balancer, a request replayed to another node would pass that node's
+ * nonce check. This store checks and notes every nonce in a local store first and then
+ * replicates newly seen nonces to all peers, which note them in their local stores. Each
+ * node runs a ReplicatedNonceStore that listens for replicated nonces on a TCP port and
+ * knows the addresses of the other nodes.
+ * <p>
+ * Nonces are sent to each peer over a single connection by a dedicated thread, which
+ * writes all nonces queued in the meantime as one batch and does not wait for the
+ * peer's answer before sending the next batch. Answers are read by a separate thread.
+ * <p>
+ * In {@link Consistency#ASYNC} mode, noteNonceIfAbsent() returns as soon as the nonce has
+ * been noted locally. A replay that reaches another node before the replication may
+ * therefore pass. In {@link Consistency#QUORUM} mode, noteNonceIfAbsent() waits until a
+ * majority of the cluster, including this node, has noted the nonce as new. If any peer
+ * reports the nonce as used, the request is treated as a replay, and if no majority is
+ * reached in time a HawkProviderException is thrown. Two nodes can then never both accept
+ * the same nonce, though concurrent use at two nodes may make both reject it.
+ * <p>
+ * The protocol is not authenticated. The port must only be reachable by the other nodes.
+ */
+public class ReplicatedNonceStore implements NonceStore, Closeable {
+
+    /**
+     * How noteNonceIfAbsent() waits for peers.
+     */
+    public enum Consistency {
+        /**
+         * Replicate in the background and do not wait for peers.
+         */
+        ASYNC,
+        /**
+         * Wait until a majority of the cluster has noted the nonce.
+         */
+        QUORUM
+    }
+
+    private static final Logger LOG = Logger.getLogger(ReplicatedNonceStore.class.getName());
+
+    private static final int MAGIC = 0x48574b52; // "HWKR"
+
+    private static final int MAX_BATCH = 512;
+
+    private static final int MAX_QUEUE = 65536;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private static final long RECONNECT_DELAY_MILLIS = 1000L;
+
+    private final NonceStore local;
+
+    private final Consistency consistency;
+
+    private final long timeoutMillis;
+
+    private final ServerSocket serverSocket;
+
+    private final List<Peer> peers = new CopyOnWriteArrayList<Peer>();
+
+    private final Set<Socket> incoming = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    private volatile boolean closed;
+
+    /**
+     * Create a store and start listening for replicated nonces.
+     *
+     * @param local The store for the nonces of this node.
+     * @param bindAddress The address to listen on for peers. Use port 0 to pick a free port.
+     * @param consistency Whether to wait for peers.
+     * @param timeoutMillis Maximum time to wait for a quorum in QUORUM mode.
+     * @throws IOException If the address cannot be bound.
+     */
+    public ReplicatedNonceStore(NonceStore local, InetSocketAddress bindAddress, Consistency consistency,
+                                long timeoutMillis) throws IOException {
+        this.local = local;
+        this.consistency = consistency;
+        this.timeoutMillis = timeoutMillis;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(bindAddress);
+        daemon(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "hawk-nonce-acceptor").start();
+    }
+
+    /**
+     * Get the port this store listens on.
+     *
+     * @return The local port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Add a node to replicate nonces to. The connection is established when the first
+     * nonce is sent and re-established after failures.
+     *
+     * @param address The address the peer's store listens on.
+     */
+    public void addPeer(InetSocketAddress address) {
+        Peer peer = new Peer(address);
+        peer.thread = daemon(peer, "hawk-nonce-replication-" + address);
+        peers.add(peer);
+        peer.thread.start();
+    }
+
+    @Override
+    public void noteNonce(String id, long ts, String nonce) {
+        try {
+            noteNonceIfAbsent(id, ts, nonce);
+        } catch (HawkProviderException e) {
+            LOG.log(Level.WARNING, "Unable to replicate nonce", e);
+        }
+    }
+
+    /**
+     * Check the local store. Nonces noted at other nodes are found once they have
+     * been replicated.
+     */
+    @Override
+    public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) throws HawkProviderException {
+        return local.nonceHasBeenUsedBefore(id, ts, nonce);
+    }
+
+    @Override
+    public boolean noteNonceIfAbsent(String id, long ts, String nonce) throws HawkProviderException {
+        if (!local.noteNonceIfAbsent(id, ts, nonce)) {
+            return false;
+        }
+        List<Peer> targets = peers;
+        int n = targets.size();
+        if (n == 0) {
+            return true;
+        }
+        Replication replication = new Replication(id, ts, nonce, (n + 1) / 2, n);
+        for (Peer peer : targets) {
+            peer.send(replication);
+        }
+        if (consistency == Consistency.ASYNC) {
+            return true;
+        }
+        return replication.await(timeoutMillis);
+    }
+
+    /**
+     * Stop listening and close all connections.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Peer peer : peers) {
+            peer.close();
+        }
+        for (Socket socket : incoming) {
+            closeQuietly(socket);
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOG.log(Level.SEVERE, "Unable to accept peer connection", e);
+                }
+                return;
+            }
+            incoming.add(socket);
+            daemon(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            }, "hawk-nonce-peer-" + socket.getRemoteSocketAddress()).start();
+        }
+    }
+
+    /**
+     * Note the nonces sent by a peer and answer whether they were new, one batch at a time.
+     */
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a nonce replication connection");
+            }
+            for (;;) {
+                int count = in.readInt();
+                if (count <= 0 || count > MAX_BATCH) {
+                    throw new IOException("Invalid batch size " + count);
+                }
+                for (int i = 0; i < count; i++) {
+                    long seq = in.readLong();
+                    String id = in.readUTF();
+                    long ts = in.readLong();
+                    String nonce = in.readUTF();
+                    boolean fresh;
+                    try {
+                        fresh = local.noteNonceIfAbsent(id, ts, nonce);
+                    } catch (HawkProviderException e) {
+                        LOG.log(Level.SEVERE, "Unable to note replicated nonce", e);
+                        fresh = false;
+                    }
+                    out.writeLong(seq);
+                    out.writeBoolean(fresh);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                LOG.log(Level.FINE, "Peer connection closed", e);
+            }
+        } finally {
+            incoming.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread t = new Thread(runnable, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * A nonce being replicated to all peers.
+     */
+    private static final class Replication {
+        private final String id;
+        private final long ts;
+        private final String nonce;
+        private final int needed;
+        private int remaining;
+        private int acks;
+        private boolean replay;
+
+        private Replication(String id, long ts, String nonce, int needed, int peers) {
+            this.id = id;
+            this.ts = ts;
+            this.nonce = nonce;
+            this.needed = needed;
+            this.remaining = peers;
+        }
+
+        private synchronized void acknowledge(boolean fresh) {
+            remaining--;
+            if (fresh) {
+                acks++;
+            } else {
+                replay = true;
+            }
+            notifyAll();
+        }
+
+        private synchronized void fail() {
+            remaining--;
+            notifyAll();
+        }
+
+        private synchronized boolean await(long timeoutMillis) throws HawkProviderException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (!replay && acks < needed && acks + remaining >= needed) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    throw new HawkProviderException("Timed out waiting for nonce replication quorum");
+                }
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new HawkProviderException("Interrupted while waiting for nonce replication quorum", e);
+                }
+            }
+            if (replay) {
+                return false;
+            }
+            if (acks >= needed) {
+                return true;
+            }
+            throw new HawkProviderException("Nonce replication quorum not reached");
+        }
+    }
+
+    /**
+     * The sending side of the replication to one peer.
+     */
+    private final class Peer implements Runnable {
+        private final InetSocketAddress address;
+        private final BlockingQueue<Replication> queue = new LinkedBlockingQueue<Replication>(MAX_QUEUE);
+        private volatile Connection connection;
+        private long nextSeq;
+        private long nextConnectAttempt;
+        private Thread thread;
+
+        private Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        private void send(Replication replication) {
+            if (!queue.offer(replication)) {
+                replication.fail();
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Replication> batch = new ArrayList<Replication>(MAX_BATCH);
+            while (!closed) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    break;
+                }
+                queue.drainTo(batch, MAX_BATCH - 1);
+                Connection c = connection;
+                if (c == null) {
+                    try {
+                        c = connect();
+                    } catch (IOException e) {
+                        LOG.log(Level.FINE, "Unable to connect to " + address, e);
+                        for (Replication r : batch) {
+                            r.fail();
+                        }
+                        batch.clear();
+                        continue;
+                    }
+                }
+                /*
+                 * Register the whole batch first, so that a failed write fails
+                 * every nonce of the batch through disconnect().
+                 */
+                long firstSeq = nextSeq;
+                for (Replication r : batch) {
+                    c.pending.put(nextSeq++, r);
+                }
+                try {
+                    c.out.writeInt(batch.size());
+                    long seq = firstSeq;
+                    for (Replication r : batch) {
+                        c.out.writeLong(seq++);
+                        c.out.writeUTF(r.id);
+                        c.out.writeLong(r.ts);
+                        c.out.writeUTF(r.nonce);
+                    }
+                    c.out.flush();
+                } catch (IOException e) {
+                    LOG.log(Level.FINE, "Unable to replicate nonces to " + address, e);
+                    disconnect(c);
+                }
+                batch.clear();
+            }
+            for (Replication r : queue) {
+                r.fail();
+            }
+        }
+
+        private Connection connect() throws IOException {
+            long now = System.currentTimeMillis();
+            if (now < nextConnectAttempt) {
+                throw new IOException("Peer " + address + " unavailable");
+            }
+            Socket socket = new Socket();
+            try {
+                socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                final Connection c = new Connection(socket);
+                c.out.writeInt(MAGIC);
+                connection = c;
+                daemon(new Runnable() {
+                    @Override
+                    public void run() {
+                        readAcknowledgements(c);
+                    }
+                }, "hawk-nonce-acks-" + address).start();
+                return c;
+            } catch (IOException e) {
+                nextConnectAttempt = now + RECONNECT_DELAY_MILLIS;
+                closeQuietly(socket);
+                throw e;
+            }
+        }
+
+        private void readAcknowledgements(Connection c) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(c.socket.getInputStream()));
+                for (;;) {
+                    long seq = in.readLong();
+                    boolean fresh = in.readBoolean();
+                    Replication r = c.pending.remove(seq);
+                    if (r != null) {
+                        r.acknowledge(fresh);
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    LOG.log(Level.FINE, "Lost connection to " + address, e);
+                }
+            } finally {
+                disconnect(c);
+            }
+        }
+
+        /**
+         * Close the connection and fail all nonces that have not been acknowledged.
+         */
+        private void disconnect(Connection c) {
+            if (connection == c) {
+                connection = null;
+            }
+            closeQuietly(c.socket);
+            for (Map.Entry<Long, Replication> e : c.pending.entrySet()) {
+                if (c.pending.remove(e.getKey(), e.getValue())) {
+                    e.getValue().fail();
+                }
+            }
+        }
+
+        private void close() {
+            Connection c = connection;
+            if (c != null) {
+                disconnect(c);
+            }
+            thread.interrupt();
+        }
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final ConcurrentMap<Long, Replication> pending = new ConcurrentHashMap<Long, Replication>();
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+    }
+
+}
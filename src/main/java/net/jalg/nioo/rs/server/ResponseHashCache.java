@@ -0,0 +1,82 @@
+package net.jalg.nioo.rs.server;
+
+/** Bounded cache of response payload hashes.
+ *
+ * The payload hash depends only on the algorithm, the content type and the body. For
+ * responses that identify their body by a strong ETag or by a version key set in the
+ * {@link HawkServerFilter#RESPONSE_VERSION_PROPERTY} property, the filter looks up
+ * the hash here. On a hit the body is written to the client without being buffered or
+ * hashed, and only the Server-Authorization MAC is calculated.
+ * <p>
+ * Entries are keyed by the request target as well, because an ETag only identifies a
+ * body among the representations of one resource. When the cache is full, the least
+ * recently used among a random sample of entries is evicted. The time of last use is
+ * taken from the filter's clock and only written when it has changed, so frequently
+ * requested entries are not written on every hit.
+ */
+public class ResponseHashCache {
+
+    private final BoundedCache<String, Entry> cache;
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxSize Maximum number of payload hashes to keep.
+     */
+    public ResponseHashCache(int maxSize) {
+        this.cache = new BoundedCache<String, Entry>(maxSize);
+    }
+
+    /**
+     * Get a cached payload hash.
+     *
+     * @param key Algorithm, content type, request target and version.
+     * @param now Current time in milliseconds.
+     * @return The base64 encoded payload hash or null if it is not cached.
+     */
+    String get(String key, long now) {
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.lastUsed != now) {
+            entry.lastUsed = now;
+        }
+        return entry.hash;
+    }
+
+    /**
+     * Remember a payload hash.
+     *
+     * @param key Algorithm, content type, request target and version.
+     * @param hash The base64 encoded payload hash.
+     * @param now Current time in milliseconds.
+     */
+    void put(String key, String hash, long now) {
+        cache.putIfAbsent(key, new Entry(hash, now), now);
+    }
+
+    /**
+     * Remove all cached hashes, for example after documents have been changed without
+     * changing their ETags.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    private static final class Entry extends BoundedCache.Entry {
+        private final String hash;
+        private volatile long lastUsed;
+
+        private Entry(String hash, long lastUsed) {
+            this.hash = hash;
+            this.lastUsed = lastUsed;
+        }
+
+        @Override
+        long evictionRank() {
+            return lastUsed;
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.HawkContext;
+
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/** OutputStream that calculates the response payload hash while the entity is written
+ * and adds the Server-Authorization header before the first byte reaches the client.
+ * <p>
+ * Bodies up to the buffer limit are held back until {@link #finish()} so that the
+ * header can include the payload hash. Once a body grows beyond the limit, writing
+ * fails with a {@link LimitExceededException} before anything has reached the client.
+ * Only if streaming unhashed bodies has been allowed, the header is then added without
+ * a payload hash and the body is streamed to the client as it is written. JAX-RS offers
+ * no means to send the header as an HTTP trailer.
+ */
+class ResponseHashingOutputStream extends OutputStream {
+
+    private static final int INITIAL_BUFFER_SIZE = 512;
+
+    private final OutputStream target;
+
+    private final MultivaluedMap<String, Object> headers;
+
+    private final HawkContext requestHawk;
+
+    private final MessageDigest digest;
+
+    private final int bufferLimit;
+
+    private final boolean streamUnhashed;
+
+    private byte[] buffer;
+
+    private int count;
+
+    private boolean streaming;
+
+    private boolean finished;
+
+    private String hash;
+
+    /**
+     * Create a new stream.
+     *
+     * @param target The stream to write the body to.
+     * @param headers The response headers to add the Server-Authorization header to.
+     * @param requestHawk The Hawk of the request being responded to.
+     * @param digest Digest that has already been started using PayloadHash.
+     * @param bufferLimit Maximum number of bytes to hold back for hashing.
+     * @param streamUnhashed Whether larger bodies are streamed without a payload hash
+     *                       instead of failing.
+     */
+    ResponseHashingOutputStream(OutputStream target, MultivaluedMap<String, Object> headers,
+                                HawkContext requestHawk, MessageDigest digest, int bufferLimit,
+                                boolean streamUnhashed) {
+        this.target = target;
+        this.headers = headers;
+        this.requestHawk = requestHawk;
+        this.digest = digest;
+        this.bufferLimit = bufferLimit;
+        this.streamUnhashed = streamUnhashed;
+        this.buffer = new byte[Math.min(INITIAL_BUFFER_SIZE, bufferLimit)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (streaming) {
+            target.write(b, off, len);
+            return;
+        }
+        if (count + len > bufferLimit) {
+            if (!streamUnhashed) {
+                buffer = null;
+                throw new LimitExceededException(bufferLimit);
+            }
+            startStreaming();
+            target.write(b, off, len);
+            return;
+        }
+        digest.update(b, off, len);
+        if (count + len > buffer.length) {
+            byte[] larger = new byte[Math.min(Math.max(buffer.length * 2, count + len), bufferLimit)];
+            System.arraycopy(buffer, 0, larger, 0, count);
+            buffer = larger;
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (streaming) {
+            target.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        target.close();
+    }
+
+    /**
+     * Add the Server-Authorization header including the payload hash and write the
+     * held back body, unless the body has already been streamed.
+     *
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (streaming) {
+            return;
+        }
+        hash = PayloadHash.finish(digest);
+        headers.add(HawkContext.SERVER_AUTHORIZATION,
+                requestHawk.cloneC().hash(hash).build().createAuthorizationHeader().toString());
+        target.write(buffer, 0, count);
+        buffer = null;
+    }
+
+    /**
+     * Get the payload hash after {@link #finish()} has been called.
+     *
+     * @return The payload hash or null if the body has been streamed without one.
+     */
+    String getHash() {
+        return hash;
+    }
+
+    /**
+     * @return true if the body has been streamed without a payload hash.
+     */
+    boolean isStreaming() {
+        return streaming;
+    }
+
+    private void startStreaming() throws IOException {
+        streaming = true;
+        headers.add(HawkContext.SERVER_AUTHORIZATION,
+                requestHawk.cloneC().hash(null).build().createAuthorizationHeader().toString());
+        target.write(buffer, 0, count);
+        buffer = null;
+    }
+
+    /**
+     * Signals that a body exceeds the buffer limit and may not be streamed without a
+     * payload hash. Nothing has been written to the client.
+     */
+    static final class LimitExceededException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        LimitExceededException(int bufferLimit) {
+            super("Response body exceeds the buffer limit of " + bufferLimit + " bytes");
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package net.jalg.nioo.rs.server;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** Ring of per-second slots covering the clock skew window.
+ *
+ * Nonce stores that keep their state per second of the request timestamp hold one value
+ * per second in this ring. A slot is replaced as a whole using compare-and-set once its
+ * second has left the window, so there is no expiry scan over single entries and no
+ * global lock.
+ */
+final class SecondRing<T> {
+
+    /*
+     * Extra seconds on either side of the window so that a request which
+     * passed the filter's clock skew check just before the second changed
+     * is still tracked.
+     */
+    static final int WINDOW_SLACK = 1;
+
+    /**
+     * Creates the value for a second that has no slot yet.
+     */
+    interface Factory<T> {
+        T create(long ts);
+    }
+
+    private final int allowedClockSkew;
+
+    private final Factory<T> factory;
+
+    private final AtomicReferenceArray<Slot<T>> slots;
+
+    /**
+     * @param allowedClockSkew The allowed clock skew in seconds. Must be greater than 0.
+     * @param factory Creates the value of a new second.
+     */
+    SecondRing(int allowedClockSkew, Factory<T> factory) {
+        if (allowedClockSkew <= 0) {
+            throw new IllegalArgumentException("Allowed clock skew must be greater than 0, got " + allowedClockSkew);
+        }
+        this.allowedClockSkew = allowedClockSkew;
+        this.factory = factory;
+        this.slots = new AtomicReferenceArray<Slot<T>>(2 * (allowedClockSkew + WINDOW_SLACK) + 2);
+    }
+
+    /**
+     * Check whether a timestamp is within the clock skew window, including the slack.
+     *
+     * @param ts Timestamp in seconds.
+     * @param now Current time in seconds.
+     */
+    static boolean isInWindow(long ts, long now, int allowedClockSkew) {
+        int window = allowedClockSkew + WINDOW_SLACK;
+        return ts >= now - window && ts <= now + window;
+    }
+
+    boolean isInWindow(long ts, long now) {
+        return isInWindow(ts, now, allowedClockSkew);
+    }
+
+    /**
+     * @return The value for the second or null if there is none.
+     */
+    T get(long ts) {
+        Slot<T> slot = slots.get(index(ts));
+        return slot != null && slot.ts == ts ? slot.value : null;
+    }
+
+    /**
+     * Get the value for the second, replacing an expired slot that occupies its place.
+     *
+     * @param now Current time in seconds.
+     * @return The value or null if ts is outside the window.
+     */
+    T getOrCreate(long ts, long now) {
+        if (!isInWindow(ts, now)) {
+            return null;
+        }
+        int index = index(ts);
+        for (;;) {
+            Slot<T> slot = slots.get(index);
+            if (slot != null && slot.ts == ts) {
+                return slot.value;
+            }
+            /*
+             * A newer slot in the place means ts has expired while we were looking.
+             */
+            if (slot != null && slot.ts > ts) {
+                return null;
+            }
+            Slot<T> fresh = new Slot<T>(ts, factory.create(ts));
+            if (slots.compareAndSet(index, slot, fresh)) {
+                return fresh.value;
+            }
+        }
+    }
+
+    private int index(long ts) {
+        int length = slots.length();
+        int index = (int) (ts % length);
+        return index < 0 ? index + length : index;
+    }
+
+    private static final class Slot<T> {
+        private final long ts;
+        private final T value;
+
+        private Slot(long ts, T value) {
+            this.ts = ts;
+            this.value = value;
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package net.jalg.nioo.rs.server;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.security.MessageDigest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** Buffer for a request body that keeps at most a fixed number of bytes on the heap.
+ *
+ * The first threshold bytes are kept in memory, the rest is written to a temporary
+ * file. All bytes are fed into a payload hash digest while they are read, and reading
+ * fails with a {@link PayloadTooLargeException} once the body exceeds the maximum size.
+ * The temporary file is deleted by {@link #close()}.
+ */
+final class SpillingBuffer implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(SpillingBuffer.class.getName());
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final int threshold;
+
+    private final long maxSize;
+
+    private final MessageDigest digest;
+
+    private byte[] head;
+
+    private int headLength;
+
+    private File file;
+
+    /**
+     * Create a new buffer.
+     *
+     * @param threshold Number of bytes to keep in memory.
+     * @param maxSize Maximum body size in bytes or a negative value for no limit.
+     * @param digest Digest that has already been started using PayloadHash.
+     */
+    SpillingBuffer(int threshold, long maxSize, MessageDigest digest) {
+        this.threshold = threshold;
+        this.maxSize = maxSize;
+        this.digest = digest;
+    }
+
+    /**
+     * Read and hash the whole body.
+     *
+     * @param in The body.
+     * @return The base64 encoded payload hash.
+     * @throws PayloadTooLargeException If the body exceeds the maximum size.
+     * @throws IOException
+     */
+    String readFrom(InputStream in) throws IOException {
+        fill(in);
+        return PayloadHash.finish(digest);
+    }
+
+    private void fill(InputStream in) throws IOException {
+        head = new byte[Math.min(threshold, COPY_BUFFER_SIZE)];
+        long total = 0;
+        int n;
+        while (headLength < threshold) {
+            if (headLength == head.length) {
+                byte[] larger = new byte[(int) Math.min((long) threshold, head.length * 2L)];
+                System.arraycopy(head, 0, larger, 0, headLength);
+                head = larger;
+            }
+            n = in.read(head, headLength, head.length - headLength);
+            if (n < 0) {
+                return;
+            }
+            total += n;
+            checkSize(total);
+            digest.update(head, headLength, n);
+            headLength += n;
+        }
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        n = in.read(buffer);
+        if (n < 0) {
+            return;
+        }
+        file = File.createTempFile("hawk-payload", ".tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), COPY_BUFFER_SIZE);
+        try {
+            while (n >= 0) {
+                total += n;
+                checkSize(total);
+                digest.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+                n = in.read(buffer);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Get a stream over the buffered body. May only be called once.
+     *
+     * @return The body.
+     * @throws IOException
+     */
+    InputStream getInputStream() throws IOException {
+        InputStream headInput = new ByteArrayInputStream(head, 0, headLength);
+        if (file == null) {
+            return headInput;
+        }
+        return new SequenceInputStream(headInput, new FileInputStream(file));
+    }
+
+    /**
+     * Release the buffer and delete the temporary file, if any. Where the platform allows
+     * it, a stream obtained from {@link #getInputStream()} remains readable.
+     */
+    @Override
+    public void close() {
+        head = null;
+        if (file != null && !file.delete()) {
+            LOG.log(Level.WARNING, "Unable to delete {0}, deleting it on exit", file);
+            file.deleteOnExit();
+        }
+    }
+
+    private void checkSize(long total) throws PayloadTooLargeException {
+        if (maxSize >= 0 && total > maxSize) {
+            throw new PayloadTooLargeException(maxSize);
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package net.jalg.nioo.rs.server;
+
+/** A nonce used by a Hawk client with a given timestamp.
+ */
+public final class UsedNonce {
+
+    private final String id;
+    private final long ts;
+    private final String nonce;
+
+    /**
+     * @param id Hawk ID the nonce has been used with
+     * @param ts Timestamp of the request
+     * @param nonce the nonce
+     */
+    public UsedNonce(String id, long ts, String nonce) {
+        this.id = id;
+        this.ts = ts;
+        this.nonce = nonce;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getTs() {
+        return ts;
+    }
+
+    public String getNonce() {
+        return nonce;
+    }
+
+}
@@ -0,0 +1,245 @@
+package net.jalg.nioo.rs.server;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** NonceStore decorator that writes nonces to a slow store in the background.
+ *
+ * Noting a nonce in a remote store adds the store's latency to every request. This store
+ * notes nonces in a local {@link InMemoryNonceStore}, which keeps them for the clock skew
+ * window, and queues them for the backing store. Checks consult the local store first, so
+ * a replay is detected even if its nonce has not been written yet. A background thread
+ * writes the queued nonces in batches of up to batchSize, at the latest after flushIntervalMillis.
+ * If the backing store is a {@link BatchNonceStore}, each batch is written in one call.
+ * <p>
+ * The queue holds at most queueCapacity nonces. The {@link OverflowPolicy} decides what
+ * happens when it is full. Nonces that cannot be written to the backing store are logged
+ * and dropped; they remain known to this node.
+ */
+public class WriteBehindNonceStore implements NonceStore, Closeable {
+
+    /**
+     * What to do with a new nonce when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait until the background thread has made room.
+         */
+        BLOCK,
+        /**
+         * Note the nonce locally only. Other nodes using the backing store will not see it.
+         */
+        LOCAL_ONLY,
+        /**
+         * Reject the request by failing noteNonceIfAbsent() with a HawkProviderException.
+         */
+        FAIL_CLOSED
+    }
+
+    private static final Logger LOG = Logger.getLogger(WriteBehindNonceStore.class.getName());
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final NonceStore backing;
+
+    private final InMemoryNonceStore local;
+
+    private final int queueCapacity;
+
+    private final int batchSize;
+
+    private final long flushIntervalNanos;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final ConcurrentLinkedQueue<UsedNonce> queue = new ConcurrentLinkedQueue<UsedNonce>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    private final Thread flusher;
+
+    private volatile boolean closed;
+
+    /**
+     * Create a new store and start its background thread.
+     *
+     * @param backing The store to write nonces to.
+     * @param allowedClockSkew The allowed clock skew in seconds, usually the value of
+     *                         HawkServerProvider.getAllowedClockSkew().
+     * @param queueCapacity Maximum number of nonces waiting to be written.
+     * @param batchSize Maximum number of nonces to write at once.
+     * @param flushIntervalMillis Maximum time a nonce waits before it is written.
+     * @param overflowPolicy What to do when the queue is full.
+     */
+    public WriteBehindNonceStore(NonceStore backing, int allowedClockSkew, int queueCapacity, int batchSize,
+                                 long flushIntervalMillis, OverflowPolicy overflowPolicy) {
+        if (queueCapacity <= 0 || batchSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Queue capacity, batch size and flush interval must be positive");
+        }
+        this.backing = backing;
+        this.local = new InMemoryNonceStore(allowedClockSkew);
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.overflowPolicy = overflowPolicy;
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushContinuously();
+            }
+        }, "hawk-nonce-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Get the number of nonces that have not been written to the backing store because
+     * the queue was full or the write failed.
+     *
+     * @return Number of dropped nonces.
+     */
+    public int getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void noteNonce(String id, long ts, String nonce) {
+        boolean reserved = reserve();
+        local.noteNonce(id, ts, nonce);
+        if (reserved) {
+            enqueue(new UsedNonce(id, ts, nonce));
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) throws HawkProviderException {
+        return local.nonceHasBeenUsedBefore(id, ts, nonce) || backing.nonceHasBeenUsedBefore(id, ts, nonce);
+    }
+
+    @Override
+    public boolean noteNonceIfAbsent(String id, long ts, String nonce) throws HawkProviderException {
+        boolean reserved = reserve();
+        if (!reserved && overflowPolicy == OverflowPolicy.FAIL_CLOSED) {
+            throw new HawkProviderException("Nonce write-behind queue is full");
+        }
+        boolean fresh = false;
+        try {
+            fresh = local.noteNonceIfAbsent(id, ts, nonce) && !backing.nonceHasBeenUsedBefore(id, ts, nonce);
+        } finally {
+            if (reserved) {
+                if (fresh) {
+                    enqueue(new UsedNonce(id, ts, nonce));
+                } else {
+                    queued.decrementAndGet();
+                }
+            } else if (fresh) {
+                dropped.incrementAndGet();
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * Write all queued nonces and stop the background thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reserve a place in the queue, applying the overflow policy if there is none.
+     *
+     * @return true if a place has been reserved.
+     */
+    private boolean reserve() {
+        for (;;) {
+            int n = queued.get();
+            if (n < queueCapacity) {
+                if (queued.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+                continue;
+            }
+            if (overflowPolicy != OverflowPolicy.BLOCK || closed) {
+                return false;
+            }
+            LockSupport.unpark(flusher);
+            LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+        }
+    }
+
+    private void enqueue(UsedNonce usedNonce) {
+        queue.offer(usedNonce);
+        if (queued.get() >= batchSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    private void flushContinuously() {
+        List<UsedNonce> batch = new ArrayList<UsedNonce>(batchSize);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        for (;;) {
+            boolean stopping = closed;
+            long wait = deadline - System.nanoTime();
+            if (!stopping && wait > 0 && queued.get() < batchSize) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            UsedNonce usedNonce;
+            while ((usedNonce = queue.poll()) != null) {
+                batch.add(usedNonce);
+                if (batch.size() == batchSize) {
+                    write(batch);
+                }
+            }
+            write(batch);
+            if (stopping) {
+                return;
+            }
+            deadline = System.nanoTime() + flushIntervalNanos;
+        }
+    }
+
+    private void write(List<UsedNonce> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            if (backing instanceof BatchNonceStore) {
+                ((BatchNonceStore) backing).noteNonces(batch);
+            } else {
+                for (UsedNonce n : batch) {
+                    backing.noteNonce(n.getId(), n.getTs(), n.getNonce());
+                }
+            }
+        } catch (HawkProviderException e) {
+            dropped.addAndGet(batch.size());
+            LOG.log(Level.SEVERE, "Unable to write " + batch.size() + " nonces to backing store", e);
+        } catch (RuntimeException e) {
+            dropped.addAndGet(batch.size());
+            LOG.log(Level.SEVERE, "Unable to write " + batch.size() + " nonces to backing store", e);
+        } finally {
+            queued.addAndGet(-batch.size());
+            batch.clear();
+        }
+    }
+
+}
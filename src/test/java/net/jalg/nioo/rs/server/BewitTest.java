@@ -0,0 +1,53 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bewit test vector taken from the Hawk reference implementation.
+ */
+public class BewitTest {
+
+    public static final String KEY = "2983d45yun89q";
+    public static final String BEWIT = "MTIzNDU2XDEzNTY0MjA3MDdca3NjeHdOUjJ0SnBQMVQxekRMTlBiQjVVaUtJVTl0T1NKWFRVZEc3WDloOD1ceGFuZHlhbmR6";
+
+    @Test
+    public void testThatBewitIsDecoded() {
+        Bewit bewit = Bewit.parse(BEWIT);
+        assertEquals("123456", bewit.getId());
+        assertEquals(1356420707L, bewit.getExp());
+        assertEquals("kscxwNR2tJpP1T1zDLNPbB5UiKIU9tOSJXTUdG7X9h8=", bewit.getMac());
+        assertEquals("xandyandz", bewit.getExt());
+    }
+
+    @Test
+    public void testThatBewitMacMatchesReferenceImplementation() {
+        Bewit bewit = Bewit.parse(BEWIT);
+        assertTrue(HawkCrypto.isValidBewitMac(bewit.getMac(), Algorithm.SHA_256, KEY, bewit.getExp(),
+                "/somewhere/over/the/rainbow", "example.com", 443, bewit.getExt()));
+        assertFalse(HawkCrypto.isValidBewitMac(bewit.getMac(), Algorithm.SHA_256, KEY, bewit.getExp(),
+                "/somewhere/else", "example.com", 443, bewit.getExt()));
+    }
+
+    @Test
+    public void testThatMalformedBewitIsRejected() {
+        assertNull(Bewit.parse(""));
+        assertNull(Bewit.parse("MTIzNDU2"));
+        assertNull(Bewit.parse("!!!"));
+    }
+
+    @Test
+    public void testThatBewitIsRemovedFromResource() {
+        assertEquals("x", Bewit.find("a=1&bewit=x&b=2"));
+        assertNull(Bewit.find("notabewit=x"));
+        assertEquals("/p?a=1&b=2", Bewit.resource("/p", "a=1&bewit=x&b=2"));
+        assertEquals("/p?a=1", Bewit.resource("/p", "a=1&bewit=x"));
+        assertEquals("/p", Bewit.resource("/p", "bewit=x"));
+        assertEquals("/p?b=2", Bewit.resource("/p", "bewit=x&b=2"));
+    }
+}
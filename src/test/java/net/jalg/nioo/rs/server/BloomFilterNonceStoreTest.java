@@ -0,0 +1,131 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterNonceStoreTest {
+
+    public static final int SKEW = 10;
+
+    private CountingNonceStore exact;
+    private BloomFilterNonceStore store;
+    private long now;
+    private TestClock clock;
+
+    @Before
+    public void setUp() {
+        now = System.currentTimeMillis() / 1000L;
+        clock = TestClock.ofSeconds(now);
+        exact = new CountingNonceStore();
+        exact.setClock(clock);
+        store = new BloomFilterNonceStore(exact, SKEW, 1000, 0.01);
+        store.setClock(clock);
+    }
+
+    @Test
+    public void testThatNonceKnownToExactStoreOnlyIsDetected() throws HawkProviderException {
+        CountingNonceStore shared = new CountingNonceStore();
+        shared.noteNonce("abc", now, "n1");
+        BloomFilterNonceStore restarted = new BloomFilterNonceStore(shared, SKEW, 1000, 0.01);
+        assertTrue(restarted.nonceHasBeenUsedBefore("abc", now, "n1"));
+        assertFalse(restarted.noteNonceIfAbsent("abc", now, "n1"));
+        assertTrue(restarted.noteNonceIfAbsent("abc", now, "n2"));
+    }
+
+    @Test
+    public void testThatReplayIsDetected() throws HawkProviderException {
+        assertTrue(store.noteNonceIfAbsent("abc", now, "n1"));
+        assertEquals(1, exact.checks);
+        assertFalse(store.noteNonceIfAbsent("abc", now, "n1"));
+        assertTrue(store.nonceHasBeenUsedBefore("abc", now, "n1"));
+        assertFalse(store.nonceHasBeenUsedBefore("xyz", now, "n1"));
+    }
+
+    @Test
+    public void testThatEveryNewNonceIsNotedOnceInExactStore() throws HawkProviderException {
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(store.noteNonceIfAbsent("abc", now, "n" + i));
+        }
+        assertEquals(1000, exact.checks);
+        assertEquals(0, exact.notes);
+    }
+
+    @Test
+    public void testThatSingleWriterAnswersMissesLocally() throws HawkProviderException {
+        final List<Runnable> writes = new ArrayList<Runnable>();
+        BloomFilterNonceStore single = new BloomFilterNonceStore(exact, SKEW, 1000, 0.01, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                writes.add(command);
+            }
+        });
+        single.setClock(clock);
+        exact.noteNonce("abc", now, "old");
+        assertFalse(single.noteNonceIfAbsent("abc", now, "old"));
+        assertTrue(single.noteNonceIfAbsent("abc", now, "new"));
+        assertEquals(2, exact.checks);
+        assertTrue(writes.isEmpty());
+
+        long later = now + SKEW + 2;
+        clock.setSeconds(later);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(single.noteNonceIfAbsent("abc", later, "n" + i));
+        }
+        assertTrue("Exact checks: " + exact.checks, exact.checks - 2 < 100);
+        int checks = exact.checks;
+        assertFalse(single.noteNonceIfAbsent("abc", later, "n0"));
+        assertTrue(single.nonceHasBeenUsedBefore("abc", later, "n0"));
+        assertEquals(checks, exact.checks);
+
+        int falsePositives = checks - 2;
+        assertEquals(1000 - falsePositives, writes.size());
+        for (Runnable write : writes) {
+            write.run();
+        }
+        assertEquals(1 + writes.size(), exact.notes);
+        assertFalse(single.noteNonceIfAbsent("abc", later, "n0"));
+        assertTrue(exact.nonceHasBeenUsedBefore("abc", later, "n999"));
+    }
+
+    @Test
+    public void testThatTimestampOutsideWindowIsReportedAsUsed() throws HawkProviderException {
+        assertTrue(store.nonceHasBeenUsedBefore("abc", now - SKEW - 2, "n1"));
+        assertFalse(store.noteNonceIfAbsent("abc", now - SKEW - 2, "n1"));
+    }
+
+    public static class CountingNonceStore extends InMemoryNonceStore {
+
+        private int checks;
+        private int notes;
+
+        public CountingNonceStore() {
+            super(SKEW);
+        }
+
+        @Override
+        public void noteNonce(String id, long ts, String nonce) {
+            notes++;
+            super.noteNonce(id, ts, nonce);
+        }
+
+        @Override
+        public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) {
+            checks++;
+            return super.nonceHasBeenUsedBefore(id, ts, nonce);
+        }
+
+        @Override
+        public boolean noteNonceIfAbsent(String id, long ts, String nonce) {
+            checks++;
+            return super.noteNonceIfAbsent(id, ts, nonce);
+        }
+    }
+}
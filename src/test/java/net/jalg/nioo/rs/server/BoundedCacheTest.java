@@ -0,0 +1,97 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void testThatSizeIsBounded() {
+        BoundedCache<Integer, TestEntry> cache = new BoundedCache<Integer, TestEntry>(100);
+        for (int i = 0; i < 1000; i++) {
+            assertNull(cache.putIfAbsent(i, new TestEntry(i, Long.MAX_VALUE), 0L));
+        }
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void testThatLowestRankIsEvicted() {
+        BoundedCache<String, TestEntry> cache = new BoundedCache<String, TestEntry>(2);
+        cache.putIfAbsent("a", new TestEntry(2, Long.MAX_VALUE), 0L);
+        cache.putIfAbsent("b", new TestEntry(1, Long.MAX_VALUE), 0L);
+        cache.putIfAbsent("c", new TestEntry(3, Long.MAX_VALUE), 0L);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void testThatExpiredEntriesAreEvictedFirst() {
+        BoundedCache<String, TestEntry> cache = new BoundedCache<String, TestEntry>(2);
+        cache.putIfAbsent("a", new TestEntry(1, Long.MAX_VALUE), 10L);
+        cache.putIfAbsent("b", new TestEntry(2, 5L), 10L);
+        cache.putIfAbsent("c", new TestEntry(3, Long.MAX_VALUE), 10L);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void testThatEvictionSamplesTheWholeCache() {
+        BoundedCache<Integer, TestEntry> cache = new BoundedCache<Integer, TestEntry>(1000);
+        for (int i = 0; i < 1000; i++) {
+            cache.putIfAbsent(i, new TestEntry(i, Long.MAX_VALUE), 0L);
+        }
+        for (int i = 1000; i < 1500; i++) {
+            cache.putIfAbsent(i, new TestEntry(i, Long.MAX_VALUE), 0L);
+        }
+        int oldest = 0;
+        for (int i = 0; i < 250; i++) {
+            if (cache.get(i) != null) {
+                oldest++;
+            }
+        }
+        assertTrue("Oldest entries kept: " + oldest, oldest < 75);
+    }
+
+    @Test
+    public void testThatReplacedAndRemovedEntriesAreTracked() {
+        BoundedCache<String, TestEntry> cache = new BoundedCache<String, TestEntry>(10);
+        TestEntry first = new TestEntry(1, Long.MAX_VALUE);
+        TestEntry second = new TestEntry(2, Long.MAX_VALUE);
+        cache.put("a", first, 0L);
+        cache.put("a", second, 0L);
+        assertEquals(1, cache.size());
+        assertSame(second, cache.putIfAbsent("a", first, 0L));
+        cache.remove("a", first);
+        assertEquals(1, cache.size());
+        cache.remove("a", second);
+        assertEquals(0, cache.size());
+        assertNull(cache.get("a"));
+    }
+
+    private static final class TestEntry extends BoundedCache.Entry {
+        private final long rank;
+        private final long exp;
+
+        private TestEntry(long rank, long exp) {
+            this.rank = rank;
+            this.exp = exp;
+        }
+
+        @Override
+        long evictionRank() {
+            return rank;
+        }
+
+        @Override
+        boolean isExpired(long now) {
+            return exp <= now;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CachingHawkServerProviderTest {
+
+    public static final long EXPIRE = 1000L;
+    public static final long REFRESH = 750L;
+    public static final long NEGATIVE_EXPIRE = 100L;
+
+    private CountingProvider backend;
+    private TestClock clock;
+    private CachingHawkServerProvider provider;
+
+    @Before
+    public void setUp() {
+        backend = new CountingProvider();
+        clock = new TestClock(1000000L);
+        provider = new CachingHawkServerProvider(backend, 2, EXPIRE, REFRESH, NEGATIVE_EXPIRE, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        provider.setClock(clock);
+    }
+
+    @Test
+    public void testThatCredentialsAreCached() throws HawkProviderException {
+        assertNotNull(provider.getHawkCredentials("test", "abc"));
+        assertNotNull(provider.getHawkCredentials("test", "abc"));
+        assertEquals(1, backend.lookups);
+    }
+
+    @Test
+    public void testThatRealmIsPartOfTheKey() throws HawkProviderException {
+        provider.getHawkCredentials("test", "abc");
+        provider.getHawkCredentials("other", "abc");
+        assertEquals(2, backend.lookups);
+    }
+
+    @Test
+    public void testThatExpiredCredentialsAreReloaded() throws HawkProviderException {
+        provider.getHawkCredentials("test", "abc");
+        clock.advance(EXPIRE);
+        provider.getHawkCredentials("test", "abc");
+        assertEquals(2, backend.lookups);
+    }
+
+    @Test
+    public void testThatCredentialsAreRefreshedAhead() throws HawkProviderException {
+        provider.getHawkCredentials("test", "abc");
+        clock.advance(REFRESH);
+        provider.getHawkCredentials("test", "abc");
+        assertEquals(2, backend.lookups);
+        clock.advance(REFRESH / 2);
+        provider.getHawkCredentials("test", "abc");
+        assertEquals(2, backend.lookups);
+    }
+
+    @Test
+    public void testThatUnknownIdsAreCachedBriefly() throws HawkProviderException {
+        assertNull(provider.getHawkCredentials("test", CountingProvider.UNKNOWN));
+        assertNull(provider.getHawkCredentials("test", CountingProvider.UNKNOWN));
+        assertEquals(1, backend.lookups);
+        clock.advance(NEGATIVE_EXPIRE);
+        assertNull(provider.getHawkCredentials("test", CountingProvider.UNKNOWN));
+        assertEquals(2, backend.lookups);
+    }
+
+    @Test
+    public void testThatCacheIsBounded() throws HawkProviderException {
+        provider.getHawkCredentials("test", "a");
+        clock.advance(1);
+        provider.getHawkCredentials("test", "b");
+        clock.advance(1);
+        provider.getHawkCredentials("test", "a");
+        clock.advance(1);
+        provider.getHawkCredentials("test", "c");
+        assertEquals(3, backend.lookups);
+        provider.getHawkCredentials("test", "a");
+        provider.getHawkCredentials("test", "c");
+        assertEquals(3, backend.lookups);
+        provider.getHawkCredentials("test", "b");
+        assertEquals(4, backend.lookups);
+    }
+
+    @Test
+    public void testThatCloseStopsOwnedRefreshThread() throws HawkProviderException {
+        CachingHawkServerProvider owning = new CachingHawkServerProvider(backend, 2, EXPIRE);
+        owning.setClock(clock);
+        owning.getHawkCredentials("test", "abc");
+        owning.close();
+        clock.advance(REFRESH);
+        assertNotNull(owning.getHawkCredentials("test", "abc"));
+        assertEquals(1, backend.lookups);
+    }
+
+    @Test
+    public void testThatCloseLeavesGivenExecutorRunning() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            new CachingHawkServerProvider(backend, 2, EXPIRE, REFRESH, NEGATIVE_EXPIRE, executor).close();
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testThatOnlyAtomicDelegatesAreAdvertisedAsAtomic() throws HawkProviderException {
+        assertFalse(CachingHawkServerProvider.create(backend, 2, EXPIRE) instanceof AtomicNonceHawkServerProvider);
+
+        AtomicCountingProvider atomicBackend = new AtomicCountingProvider();
+        HawkServerProvider atomic = CachingHawkServerProvider.create(atomicBackend, 2, EXPIRE);
+        assertTrue(atomic instanceof AtomicNonceHawkServerProvider);
+        assertTrue(((AtomicNonceHawkServerProvider) atomic).noteNonceIfAbsent("abc", 1L, "n1"));
+        assertEquals(1, atomicBackend.atomicNotes);
+    }
+
+    public static class CountingProvider extends HawkServerFilterTest.TestProvider {
+
+        public static final String UNKNOWN = "unknown";
+
+        private int lookups;
+
+        @Override
+        public HawkCredentials getHawkCredentials(String realm, String id) throws HawkProviderException {
+            lookups++;
+            return UNKNOWN.equals(id) ? null : super.getHawkCredentials(realm, id);
+        }
+    }
+
+    public static class AtomicCountingProvider extends CountingProvider implements AtomicNonceHawkServerProvider {
+
+        private int atomicNotes;
+
+        @Override
+        public boolean noteNonceIfAbsent(String id, long ts, String nonce) {
+            atomicNotes++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CoarseClockTest {
+
+    @Test
+    public void testThatClockFollowsSystemTime() throws InterruptedException {
+        CoarseClock clock = new CoarseClock(1);
+        try {
+            long first = clock.currentTimeMillis();
+            assertTrue(Math.abs(first - System.currentTimeMillis()) < 1000);
+            Thread.sleep(50);
+            assertTrue(clock.currentTimeMillis() > first);
+        } finally {
+            clock.close();
+        }
+    }
+
+    @Test
+    public void testThatClosedClockKeepsLastReading() throws InterruptedException {
+        CoarseClock clock = new CoarseClock(1);
+        clock.close();
+        Thread.sleep(20);
+        long reading = clock.currentTimeMillis();
+        Thread.sleep(20);
+        assertEquals(reading, clock.currentTimeMillis());
+    }
+
+    @Test
+    public void testThatSharedClockIsStoppedByLastUser() throws InterruptedException {
+        HawkClock first = CoarseClock.acquireDefault();
+        HawkClock second = CoarseClock.acquireDefault();
+        assertSame(first, second);
+        CoarseClock.releaseDefault();
+        HawkClock third = CoarseClock.acquireDefault();
+        assertSame(first, third);
+        CoarseClock.releaseDefault();
+        CoarseClock.releaseDefault();
+
+        Thread.sleep(20);
+        long reading = first.currentTimeMillis();
+        Thread.sleep(2 * CoarseClock.DEFAULT_RESOLUTION_MILLIS);
+        assertEquals(reading, first.currentTimeMillis());
+
+        HawkClock restarted = CoarseClock.acquireDefault();
+        assertNotSame(first, restarted);
+        CoarseClock.releaseDefault();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testThatSharedClockCannotBeClosed() {
+        CoarseClock clock = (CoarseClock) CoarseClock.acquireDefault();
+        try {
+            clock.close();
+        } finally {
+            CoarseClock.releaseDefault();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExecutorAsyncHawkServerProviderTest {
+
+    private ExecutorService executor;
+    private long now;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        now = System.currentTimeMillis() / 1000L;
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testThatNonceIsNotedAtomically() throws HawkProviderException {
+        AtomicProvider delegate = new AtomicProvider();
+        ExecutorAsyncHawkServerProvider provider = new ExecutorAsyncHawkServerProvider(delegate, executor);
+        assertFalse(HawkServerFilter.await(provider.nonceHasBeenUsedBeforeAsync("abc", now, "n1"), 1000));
+        assertTrue(HawkServerFilter.await(provider.noteNonceIfAbsentAsync("abc", now, "n1"), 1000));
+        assertFalse(HawkServerFilter.await(provider.noteNonceIfAbsentAsync("abc", now, "n1"), 1000));
+        assertEquals(2, delegate.atomicCalls);
+    }
+
+    @Test
+    public void testThatSlowCallTimesOutAndIsCancelled() throws InterruptedException {
+        BlockingProvider delegate = new BlockingProvider();
+        ExecutorAsyncHawkServerProvider provider = new ExecutorAsyncHawkServerProvider(delegate, executor);
+        try {
+            HawkServerFilter.await(provider.getHawkCredentialsAsync("realm", "abc"), 50);
+            fail("Expected timeout");
+        } catch (HawkProviderException e) {
+            assertTrue(e.getMessage().contains("timed out"));
+        }
+        assertTrue(delegate.interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testThatProviderExceptionIsPassedOn() {
+        final HawkProviderException failure = new HawkProviderException("store down");
+        ExecutorAsyncHawkServerProvider provider = new ExecutorAsyncHawkServerProvider(
+                new HawkServerFilterTest.TestProvider() {
+                    @Override
+                    public HawkCredentials getHawkCredentials(String realm, String id) throws HawkProviderException {
+                        throw failure;
+                    }
+                }, executor);
+        try {
+            HawkServerFilter.await(provider.getHawkCredentialsAsync("realm", "abc"), 1000);
+            fail("Expected exception");
+        } catch (HawkProviderException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    public static class AtomicProvider extends HawkServerFilterTest.TestProvider
+            implements AtomicNonceHawkServerProvider {
+
+        private final InMemoryNonceStore store = new InMemoryNonceStore(10);
+        private volatile int atomicCalls;
+
+        @Override
+        public void noteNonce(String id, long ts, String nonce) {
+            store.noteNonce(id, ts, nonce);
+        }
+
+        @Override
+        public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) {
+            return store.nonceHasBeenUsedBefore(id, ts, nonce);
+        }
+
+        @Override
+        public boolean noteNonceIfAbsent(String id, long ts, String nonce) {
+            atomicCalls++;
+            return store.noteNonceIfAbsent(id, ts, nonce);
+        }
+    }
+
+    public static class BlockingProvider extends HawkServerFilterTest.TestProvider {
+
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        @Override
+        public HawkCredentials getHawkCredentials(String realm, String id) throws HawkProviderException {
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FailureLimiterTest {
+
+    public static final long WINDOW = 60000L;
+
+    private TestClock clock;
+    private FailureLimiter limiter;
+
+    @Before
+    public void setUp() {
+        clock = new TestClock(1000000L);
+        limiter = new FailureLimiter(3, 5, WINDOW, 1 << 16);
+        limiter.setClock(clock);
+    }
+
+    @Test
+    public void testThatIdIsBlockedAfterThreshold() {
+        for (int i = 0; i < 3; i++) {
+            assertFalse(limiter.isBlocked("alice", null));
+            limiter.recordFailure("alice", null);
+        }
+        assertTrue(limiter.isBlocked("alice", null));
+        assertFalse(limiter.isBlocked("bob", null));
+    }
+
+    @Test
+    public void testThatAddressIsBlockedAcrossIds() {
+        for (int i = 0; i < 5; i++) {
+            limiter.recordFailure("id" + i, "10.0.0.1");
+        }
+        assertTrue(limiter.isBlocked("other", "10.0.0.1"));
+        assertFalse(limiter.isBlocked("other", "10.0.0.2"));
+    }
+
+    @Test
+    public void testThatFailuresExpireAfterTwoWindows() {
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure("alice", null);
+        }
+        clock.advance(WINDOW);
+        assertTrue(limiter.isBlocked("alice", null));
+        clock.advance(WINDOW);
+        assertFalse(limiter.isBlocked("alice", null));
+    }
+
+    @Test
+    public void testThatManyDistinctIdsDoNotBlockOthers() {
+        for (int i = 0; i < 10000; i++) {
+            limiter.recordFailure("attacker-" + i, null);
+        }
+        assertFalse(limiter.isBlocked("alice", null));
+    }
+}
@@ -0,0 +1,98 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FileHawkServerProviderTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("hawk-credentials", ".txt");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testThatCredentialsAreLoaded() throws IOException {
+        write("# comment\n\nid1 sha256 key1 alice admin,user\nid2 sha1 key2\n");
+        FileHawkServerProvider provider = new FileHawkServerProvider(file, new InMemoryNonceStore(10), 10);
+        assertEquals(2, provider.size());
+
+        HawkCredentials c = provider.getHawkCredentials("test", "id1");
+        assertEquals("key1", c.getPwd());
+        assertEquals(Algorithm.SHA_256, c.getAlgorithm());
+        assertEquals("alice", c.getProvidedUser().getPrincipal().getName());
+        assertTrue(c.getProvidedUser().isInRole("user"));
+        assertFalse(c.getProvidedUser().isInRole("guest"));
+
+        c = provider.getHawkCredentials("test", "id2");
+        assertEquals(Algorithm.SHA_1, c.getAlgorithm());
+        assertEquals("id2", c.getProvidedUser().getPrincipal().getName());
+        assertNull(provider.getHawkCredentials("test", "id3"));
+    }
+
+    @Test
+    public void testThatReloadReplacesCredentials() throws IOException {
+        write("id1 sha256 key1\n");
+        FileHawkServerProvider provider = new FileHawkServerProvider(file, new InMemoryNonceStore(10), 10);
+        write("id2 sha256 key2\n");
+        provider.reload();
+        assertNull(provider.getHawkCredentials(null, "id1"));
+        assertEquals("key2", provider.getHawkCredentials(null, "id2").getPwd());
+    }
+
+    @Test
+    public void testThatMalformedFileKeepsPreviousCredentials() throws IOException {
+        write("id1 sha256 key1\n");
+        FileHawkServerProvider provider = new FileHawkServerProvider(file, new InMemoryNonceStore(10), 10);
+        write("id1 md5 key1\n");
+        try {
+            provider.reload();
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals("key1", provider.getHawkCredentials(null, "id1").getPwd());
+    }
+
+    @Test
+    public void testThatManyCredentialsCanBeLookedUp() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("id").append(i).append(" sha256 key").append(i).append('\n');
+        }
+        write(sb.toString());
+        FileHawkServerProvider provider = new FileHawkServerProvider(file, new InMemoryNonceStore(10), 10);
+        for (int i = 0; i < 10000; i++) {
+            assertEquals("key" + i, provider.getHawkCredentials(null, "id" + i).getPwd());
+        }
+    }
+
+    private void write(String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package net.jalg.nioo.rs.server;
+
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * One method per combination of payload validation and response hashing, each
+ * reporting whether the request carries the HAWK_SERVER_PROPERTY.
+ */
+@Path("filterPartsResource")
+public class FilterPartsResource {
+
+    @POST
+    @Path("validateOnly")
+    @Produces(MediaType.TEXT_PLAIN)
+    @HawkProtected(realm = "test" , validateRequestPayload = true,hashResponsePayload = false)
+    public String validateOnly(@Context ContainerRequestContext request, String body) {
+        return body + ":" + hasHawkProperty(request);
+    }
+
+    @GET
+    @Path("hashOnly")
+    @Produces(MediaType.TEXT_PLAIN)
+    @HawkProtected(realm = "test" , validateRequestPayload = false,hashResponsePayload = true)
+    public String hashOnly(@Context ContainerRequestContext request) {
+        return "Test:" + hasHawkProperty(request);
+    }
+
+    @POST
+    @Path("validateAndHash")
+    @Produces(MediaType.TEXT_PLAIN)
+    @HawkProtected(realm = "test" , validateRequestPayload = true,hashResponsePayload = true)
+    public String validateAndHash(@Context ContainerRequestContext request, String body) {
+        return body + ":" + hasHawkProperty(request);
+    }
+
+    @GET
+    @Path("plain")
+    @Produces(MediaType.TEXT_PLAIN)
+    @HawkProtected(realm = "test" , validateRequestPayload = false,hashResponsePayload = false)
+    public String plain(@Context ContainerRequestContext request) {
+        return "Test:" + hasHawkProperty(request);
+    }
+
+    private static boolean hasHawkProperty(ContainerRequestContext request) {
+        return request.getProperty(HawkServerFilter.HAWK_SERVER_PROPERTY) != null;
+    }
+}
@@ -0,0 +1,47 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Header examples taken from the Hawk specification.
+ */
+public class HawkAuthorizationTest {
+
+    private static final String HEADER = "Hawk id=\"dh37fgj492je\", ts=\"1353832234\", nonce=\"j4h3g2\", "
+            + "ext=\"some-app-ext-data\", mac=\"6R4rV5iE+NPoym+WwjeHzjAGXUtLNIxmo1vpMofpLAE=\"";
+
+    @Test
+    public void testThatAllAttributesAreExtracted() {
+        HawkAuthorization a = HawkAuthorization.parse(HEADER);
+        assertEquals("dh37fgj492je", a.getId());
+        assertEquals(1353832234L, a.getTs());
+        assertEquals("j4h3g2", a.getNonce());
+        assertEquals("some-app-ext-data", a.getExt());
+        assertEquals("6R4rV5iE+NPoym+WwjeHzjAGXUtLNIxmo1vpMofpLAE=", a.getMac());
+        assertNull(a.getHash());
+    }
+
+    @Test
+    public void testThatHashIsExtracted() {
+        HawkAuthorization a = HawkAuthorization.parse("hawk id=\"123456\", ts=\"1353809207\", nonce=\"Ygvqdz\","
+                + "hash=\"bsvY3IfUllw6V5rvk4tStEvpBhE=\",mac=\"pzbedj1Lz8glBaRWTQaHKyzYSfk=\"");
+        assertEquals("bsvY3IfUllw6V5rvk4tStEvpBhE=", a.getHash());
+        assertEquals("pzbedj1Lz8glBaRWTQaHKyzYSfk=", a.getMac());
+    }
+
+    @Test
+    public void testThatMalformedHeadersAreRejected() {
+        assertNull(HawkAuthorization.parse("Basic dXNlcjpwYXNz"));
+        assertNull(HawkAuthorization.parse("Hawk id=\"a\", ts=\"1\", nonce=\"n\""));
+        assertNull(HawkAuthorization.parse("Hawk id=\"a\", id=\"b\", ts=\"1\", nonce=\"n\", mac=\"m\""));
+        assertNull(HawkAuthorization.parse("Hawk id=\"a\", ts=\"1\", nonce=\"n\", mac=\"m\", foo=\"x\""));
+        assertNull(HawkAuthorization.parse("Hawk id=\"a\", ts=\"1x\", nonce=\"n\", mac=\"m\""));
+        assertNull(HawkAuthorization.parse("Hawk id=\"a\", ts=\"1\", nonce=\"n\", mac=\"m"));
+        assertNull(HawkAuthorization.parse("Hawk id=\"a\" ts=\"1\", nonce=\"n\", mac=\"m\""));
+        assertNull(HawkAuthorization.parse("Hawk id=\"\", ts=\"1\", nonce=\"n\", mac=\"m\""));
+        assertNull(HawkAuthorization.parse("Hawk id=\"a\\b\", ts=\"1\", nonce=\"n\", mac=\"m\""));
+    }
+}
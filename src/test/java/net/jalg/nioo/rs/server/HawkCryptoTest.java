@@ -0,0 +1,44 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Header MAC test vector taken from the Hawk specification.
+ */
+public class HawkCryptoTest {
+
+    public static final String KEY = "werxhqb98rpaxn39848xrunpaw3489ruxnpa98w4rxn";
+    public static final String MAC = "6R4rV5iE+NPoym+WwjeHzjAGXUtLNIxmo1vpMofpLAE=";
+
+    @Test
+    public void testThatHeaderMacMatchesSpecification() {
+        assertTrue(HawkCrypto.isValidHeaderMac(MAC, Algorithm.SHA_256, KEY, 1353832234L, "j4h3g2",
+                "GET", "/resource/1?b=1&a=2", "example.com", 8000, null, "some-app-ext-data"));
+    }
+
+    @Test
+    public void testThatChangedRequestInvalidatesMac() {
+        assertFalse(HawkCrypto.isValidHeaderMac(MAC, Algorithm.SHA_256, KEY, 1353832234L, "j4h3g2",
+                "GET", "/resource/2?b=1&a=2", "example.com", 8000, null, "some-app-ext-data"));
+        assertFalse(HawkCrypto.isValidHeaderMac(null, Algorithm.SHA_256, KEY, 1353832234L, "j4h3g2",
+                "GET", "/resource/1?b=1&a=2", "example.com", 8000, null, "some-app-ext-data"));
+    }
+
+    @Test
+    public void testThatEnginesAreReusedPerThread() {
+        assertSame(HawkCrypto.mac(Algorithm.SHA_256, KEY), HawkCrypto.mac(Algorithm.SHA_256, KEY));
+        assertSame(HawkCrypto.digest(Algorithm.SHA_1), HawkCrypto.digest(Algorithm.SHA_1));
+    }
+
+    @Test
+    public void testThatBufferedPayloadHashMatchesStreamedHash() throws Exception {
+        assertEquals(PayloadHashTest.HASH, HawkCrypto.payloadHash(Algorithm.SHA_256,
+                PayloadHashTest.BODY.getBytes("UTF-8"), "text/plain"));
+    }
+}
@@ -0,0 +1,104 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class HawkFeatureTest {
+
+    private HawkFeature feature;
+
+    @Before
+    public void setUp() {
+        feature = new HawkFeature(new HawkServerFilterTest.TestProvider());
+    }
+
+    @After
+    public void tearDown() {
+        feature.close();
+    }
+
+    @Test
+    public void testThatPlainMethodGetsRequestFilterOnly() throws Exception {
+        assertEquals(classes(HawkRequestFilter.class),
+                configure(FilterPartsResource.class.getMethod("plain", ContainerRequestContext.class)));
+    }
+
+    @Test
+    public void testThatValidatingMethodGetsReaderInterceptor() throws Exception {
+        assertEquals(classes(HawkRequestFilter.class, HawkReaderInterceptor.class),
+                configure(FilterPartsResource.class.getMethod("validateOnly", ContainerRequestContext.class,
+                        String.class)));
+    }
+
+    @Test
+    public void testThatHashingMethodGetsResponseFilterAndWriterInterceptor() throws Exception {
+        assertEquals(classes(HawkRequestFilter.class, HawkResponseFilter.class, HawkWriterInterceptor.class),
+                configure(FilterPartsResource.class.getMethod("hashOnly", ContainerRequestContext.class)));
+    }
+
+    @Test
+    public void testThatValidatingAndHashingMethodGetsAllParts() throws Exception {
+        assertEquals(classes(HawkRequestFilter.class, HawkResponseFilter.class, HawkReaderInterceptor.class,
+                        HawkWriterInterceptor.class),
+                configure(FilterPartsResource.class.getMethod("validateAndHash", ContainerRequestContext.class,
+                        String.class)));
+    }
+
+    @Test
+    public void testThatTicketsAddResponseFilterToPlainMethod() throws Exception {
+        feature.setTickets(new HawkTickets(HawkTicketsTest.PASSWORD, HawkTicketsTest.LIFETIME, 10,
+                Collections.<String>emptyList()));
+        assertEquals(classes(HawkRequestFilter.class, HawkResponseFilter.class),
+                configure(FilterPartsResource.class.getMethod("plain", ContainerRequestContext.class)));
+    }
+
+    @Test
+    public void testThatUnprotectedMethodGetsNothing() throws Exception {
+        assertEquals(classes(), configure(Object.class.getMethod("toString")));
+    }
+
+    private static List<Class<?>> classes(Class<?>... classes) {
+        return Arrays.asList(classes);
+    }
+
+    private List<Class<?>> configure(final Method resourceMethod) {
+        final List<Class<?>> registered = new ArrayList<Class<?>>();
+        ResourceInfo resourceInfo = (ResourceInfo) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ResourceInfo.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method m, Object[] args) {
+                        if (m.getName().equals("getResourceMethod")) {
+                            return resourceMethod;
+                        }
+                        throw new UnsupportedOperationException(m.getName());
+                    }
+                });
+        FeatureContext featureContext = (FeatureContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{FeatureContext.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method m, Object[] args) {
+                        if (m.getName().equals("register")) {
+                            registered.add(args[0] instanceof Class ? (Class<?>) args[0] : args[0].getClass());
+                            return proxy;
+                        }
+                        throw new UnsupportedOperationException(m.getName());
+                    }
+                });
+        feature.configure(resourceInfo, featureContext);
+        return registered;
+    }
+}
@@ -0,0 +1,102 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class HawkServerFilterNonceTest {
+
+    private static final URI URI = java.net.URI.create("http://localhost:8082/myapp/test");
+
+    private ExecutorService executor;
+    private long now;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        now = System.currentTimeMillis() / 1000L;
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testThatPlainProviderIsAskedTwicePerRequest() throws Exception {
+        CountingProvider provider = new CountingProvider();
+        HawkServerFilter filter = filter(provider);
+
+        assertNull(filter(filter, "n1").getAbortResponse());
+        assertEquals(1, provider.checks);
+        assertEquals(1, provider.notes);
+
+        assertEquals(401, filter(filter, "n1").getAbortResponse().getStatus());
+        assertEquals(2, provider.checks);
+        assertEquals(1, provider.notes);
+    }
+
+    @Test
+    public void testThatExecutorProviderWithPlainDelegateIsAskedTwicePerRequest() throws Exception {
+        CountingProvider provider = new CountingProvider();
+        HawkServerFilter filter = filter(new ExecutorAsyncHawkServerProvider(provider, executor));
+
+        assertNull(filter(filter, "n1").getAbortResponse());
+        assertEquals(1, provider.checks);
+        assertEquals(1, provider.notes);
+
+        assertEquals(401, filter(filter, "n1").getAbortResponse().getStatus());
+        assertEquals(2, provider.checks);
+        assertEquals(1, provider.notes);
+    }
+
+    @Test
+    public void testThatExecutorProviderWithAtomicDelegateChecksEarly() throws Exception {
+        ExecutorAsyncHawkServerProviderTest.AtomicProvider provider = new ExecutorAsyncHawkServerProviderTest.AtomicProvider();
+        HawkServerFilter filter = filter(new ExecutorAsyncHawkServerProvider(provider, executor));
+
+        assertNull(filter(filter, "n1").getAbortResponse());
+        TestRequestContext replay = filter(filter, "n1");
+        assertNotNull(replay.getAbortResponse());
+        assertEquals(401, replay.getAbortResponse().getStatus());
+    }
+
+    private HawkServerFilter filter(HawkServerProvider provider) {
+        HawkServerFilter filter = new HawkServerFilter(provider, false, false);
+        filter.setReuseCryptoEngines(true);
+        return filter;
+    }
+
+    private TestRequestContext filter(HawkServerFilter filter, String nonce) throws Exception {
+        TestRequestContext context = TestRequestContext.signed("GET", URI, now, nonce);
+        filter.filter(context.proxy());
+        return context;
+    }
+
+    public static class CountingProvider extends HawkServerFilterTest.TestProvider {
+
+        private final InMemoryNonceStore store = new InMemoryNonceStore(10);
+        private volatile int checks;
+        private volatile int notes;
+
+        @Override
+        public void noteNonce(String id, long ts, String nonce) {
+            notes++;
+            store.noteNonce(id, ts, nonce);
+        }
+
+        @Override
+        public boolean nonceHasBeenUsedBefore(String id, long ts, String nonce) {
+            checks++;
+            return store.nonceHasBeenUsedBefore(id, ts, nonce);
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.security.Principal;
 import java.util.logging.Level;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -41,13 +42,14 @@ public class HawkServerFilterTest {
     public static final String PWD = "def";
     public static Algorithm ALGORITHM = Algorithm.SHA_256;
 
+    private HawkFeature hawkFeature;
     private HttpServer server;
     private Client client;
     private WebTarget baseTarget;
 
     @Before
     public void setUp() throws Exception {
-        HawkFeature hawkFeature = new HawkFeature(new TestProvider());
+        hawkFeature = new HawkFeature(new TestProvider());
         final ResourceConfig rc = new ResourceConfig().packages("net.jalg.nioo.rs.server")
                 .register(hawkFeature);
         client= ClientBuilder.newClient();
@@ -58,6 +60,7 @@ public class HawkServerFilterTest {
     @After
     public void tearDown() throws Exception {
         server.stop();
+        hawkFeature.close();
     }
 
     @Test
@@ -84,6 +87,21 @@ public class HawkServerFilterTest {
 
     }
 
+    @Test
+    public void testThatFilterRejectsStaleTimestamp() {
+        WebTarget target = baseTarget.path(UriBuilder.fromResource(NonBodyValidatingNonResponseBodySigningResource.class).build().getPath());
+        long ts = System.currentTimeMillis() / 1000L - 60;
+        HawkContext hc = HawkContext.request("GET", target.getUri().getPath(), HOST, PORT).credentials(ID, PWD, ALGORITHM)
+                .tsAndNonce(ts, "abc123").build();
+        AuthorizationHeader ah = hc.createAuthorizationHeader();
+
+        Response response = target.request().header("Authorization", ah.toString()).get();
+
+        assertEquals(401,response.getStatus());
+        assertTrue(response.getHeaderString("WWW-Authenticate").contains("ts="));
+
+    }
+
     @Test
     public void testThatFilterValidatesCorrectBodyHash() {
         String body = "abcdefg";
@@ -159,6 +177,68 @@ public class HawkServerFilterTest {
 
     }
 
+    @Test
+    public void testThatValidateOnlyMethodValidatesBodyWithoutSigningResponse() {
+        String body = "abcdefg";
+        String contentType = "text/plain";
+        WebTarget target = baseTarget.path(UriBuilder.fromResource(FilterPartsResource.class).path("validateOnly").build().getPath());
+        HawkContext hc = HawkContext.request("POST", target.getUri().getPath(), HOST, PORT).credentials(ID, PWD, ALGORITHM)
+                .body(body.getBytes(Charsets.UTF_8),contentType).build();
+        AuthorizationHeader ah = hc.createAuthorizationHeader();
+
+        Response response = target.request().header("Authorization", ah.toString()).post(Entity.text(body));
+
+        assertEquals(200,response.getStatus());
+        assertNull(response.getHeaderString(HawkContext.SERVER_AUTHORIZATION));
+        // The reader interceptor needs the request's Hawk, so the property stays set.
+        assertEquals(body + ":true", response.readEntity(String.class));
+
+        response = target.request().header("Authorization", ah.toString()).post(Entity.text(body + "CHANGED"));
+
+        assertEquals(401,response.getStatus());
+
+    }
+
+    @Test
+    public void testThatHashOnlyMethodSignsResponse() throws AuthHeaderParsingException {
+        WebTarget target = baseTarget.path(UriBuilder.fromResource(FilterPartsResource.class).path("hashOnly").build().getPath());
+        HawkContext hc = HawkContext.request("GET", target.getUri().getPath(), HOST, PORT).credentials(ID, PWD, ALGORITHM).build();
+        AuthorizationHeader ah = hc.createAuthorizationHeader();
+
+        Response response = target.request().header("Authorization", ah.toString()).get();
+        assertEquals(200,response.getStatus());
+
+        AuthorizationHeader resAh =  AuthorizationHeader.authorization(
+                    response.getHeaderString(HawkContext.SERVER_AUTHORIZATION));
+
+        String body = response.readEntity(String.class);
+        assertEquals("Test:true",body);
+
+        String hash = HawkContextBuilder.generateHash(hc.getAlgorithm(), body.getBytes(Charsets.UTF_8), "text/plain");
+
+        assertTrue(Util.fixedTimeEqual(hash, resAh.getHash()));
+
+    }
+
+    @Test
+    public void testThatPlainMethodOnlyAuthenticates() {
+        WebTarget target = baseTarget.path(UriBuilder.fromResource(FilterPartsResource.class).path("plain").build().getPath());
+        HawkContext hc = HawkContext.request("GET", target.getUri().getPath(), HOST, PORT).credentials(ID, PWD, ALGORITHM).build();
+        AuthorizationHeader ah = hc.createAuthorizationHeader();
+
+        Response response = target.request().header("Authorization", ah.toString()).get();
+
+        assertEquals(200,response.getStatus());
+        assertNull(response.getHeaderString(HawkContext.SERVER_AUTHORIZATION));
+        assertEquals("Test:false", response.readEntity(String.class));
+
+        hc = HawkContext.request("GET", target.getUri().getPath(), HOST, PORT).credentials(ID, PWD + "CHANGE", ALGORITHM).build();
+        response = target.request().header("Authorization", hc.createAuthorizationHeader().toString()).get();
+
+        assertEquals(401,response.getStatus());
+
+    }
+
 
 
     public static class TestProvider implements HawkServerProvider {
@@ -0,0 +1,71 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HawkTicketsTest {
+
+    public static final String PASSWORD = "some-ticket-password-with-at-least-32-characters";
+    public static final long LIFETIME = 60000L;
+
+    private TestClock clock;
+    private HawkTickets tickets;
+    private HawkCredentials credentials;
+
+    @Before
+    public void setUp() {
+        clock = new TestClock(1000000L);
+        tickets = new HawkTickets(PASSWORD, LIFETIME, 10, Arrays.asList("admin", "guest"));
+        tickets.setClock(clock);
+        credentials = new HawkServerFilterTest.TestCredentials(new RoleUser("alice"));
+    }
+
+    @Test
+    public void testThatTicketCarriesCredentials() {
+        String ticket = tickets.issue("test", credentials);
+        HawkCredentials redeemed = tickets.redeem("test", ticket);
+        assertEquals(credentials.getId(), redeemed.getId());
+        assertEquals(credentials.getPwd(), redeemed.getPwd());
+        assertEquals(credentials.getAlgorithm(), redeemed.getAlgorithm());
+        assertEquals("alice", redeemed.getProvidedUser().getPrincipal().getName());
+        assertTrue(redeemed.getProvidedUser().isInRole("admin"));
+        assertFalse(redeemed.getProvidedUser().isInRole("guest"));
+    }
+
+    @Test
+    public void testThatExpiredTicketIsRejected() {
+        String ticket = tickets.issue("test", credentials);
+        clock.advance(LIFETIME);
+        assertNull(tickets.redeem("test", ticket));
+    }
+
+    @Test
+    public void testThatTicketIsBoundToRealm() {
+        String ticket = tickets.issue("test", credentials);
+        assertNull(tickets.redeem("other", ticket));
+    }
+
+    @Test
+    public void testThatForgedTicketIsRejected() {
+        assertNull(tickets.redeem("test", "Fe26.2**invalid"));
+    }
+
+    public static class RoleUser extends HawkServerFilterTest.TestProvidedUser {
+
+        public RoleUser(String name) {
+            super(name);
+        }
+
+        @Override
+        public boolean isInRole(String role) {
+            return "admin".equals(role);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryNonceStoreTest {
+
+    public static final int SKEW = 10;
+    public static final long START = 1400000000L;
+
+    private TestClock clock;
+    private InMemoryNonceStore store;
+
+    @Before
+    public void setUp() {
+        clock = TestClock.ofSeconds(START);
+        store = new InMemoryNonceStore(SKEW);
+        store.setClock(clock);
+    }
+
+    @Test
+    public void testThatNotedNonceIsDetected() {
+        assertFalse(store.nonceHasBeenUsedBefore("abc", START, "n1"));
+        store.noteNonce("abc", START, "n1");
+        assertTrue(store.nonceHasBeenUsedBefore("abc", START, "n1"));
+    }
+
+    @Test
+    public void testThatNonceIsTrackedPerIdAndTimestamp() {
+        store.noteNonce("abc", START, "n1");
+        assertFalse(store.nonceHasBeenUsedBefore("xyz", START, "n1"));
+        assertFalse(store.nonceHasBeenUsedBefore("abc", START + 1, "n1"));
+    }
+
+    @Test
+    public void testThatNoteNonceIfAbsentDetectsReplay() {
+        assertTrue(store.noteNonceIfAbsent("abc", START, "n1"));
+        assertFalse(store.noteNonceIfAbsent("abc", START, "n1"));
+        assertTrue(store.nonceHasBeenUsedBefore("abc", START, "n1"));
+        assertFalse(store.noteNonceIfAbsent("abc", START + 2 * SKEW, "n2"));
+    }
+
+    @Test
+    public void testThatExpiredBucketIsReplaced() {
+        store.noteNonce("abc", START - SKEW, "n1");
+        /*
+         * Same ring slot as START - SKEW, one full ring later.
+         */
+        long later = START - SKEW + 2 * (SKEW + 1) + 2;
+        clock.setSeconds(later);
+        store.noteNonce("abc", later, "n2");
+        clock.setSeconds(START);
+        assertFalse(store.nonceHasBeenUsedBefore("abc", START - SKEW, "n1"));
+    }
+
+    @Test
+    public void testThatTimestampsOutsideWindowAreReportedAsUsed() {
+        assertTrue(store.nonceHasBeenUsedBefore("abc", START - 2 * SKEW, "n1"));
+        assertTrue(store.nonceHasBeenUsedBefore("abc", START + 2 * SKEW, "n1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatZeroSkewIsRejected() {
+        new InMemoryNonceStore(0);
+    }
+}
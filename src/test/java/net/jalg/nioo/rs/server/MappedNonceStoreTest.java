@@ -0,0 +1,114 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedNonceStoreTest {
+
+    public static final int SKEW = 10;
+    public static final long START = 1400000000L;
+
+    private File file;
+    private TestClock clock;
+    private MappedNonceStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("hawk-nonces", ".dat");
+        file.delete();
+        clock = TestClock.ofSeconds(START);
+        store = open(file, 64);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        file.delete();
+    }
+
+    @Test
+    public void testThatNotedNonceIsDetected() throws HawkProviderException {
+        assertFalse(store.nonceHasBeenUsedBefore("abc", START, "n1"));
+        assertTrue(store.noteNonceIfAbsent("abc", START, "n1"));
+        assertTrue(store.nonceHasBeenUsedBefore("abc", START, "n1"));
+        assertFalse(store.noteNonceIfAbsent("abc", START, "n1"));
+        assertFalse(store.nonceHasBeenUsedBefore("xyz", START, "n1"));
+        assertFalse(store.nonceHasBeenUsedBefore("abc", START + 1, "n1"));
+    }
+
+    @Test
+    public void testThatNoncesSurviveReopening() throws IOException {
+        store.noteNonce("abc", START, "n1");
+        store.close();
+        store = open(file, 64);
+        assertTrue(store.nonceHasBeenUsedBefore("abc", START, "n1"));
+    }
+
+    @Test
+    public void testThatSeedIsRandomPerFileAndKeptOnReopening() throws IOException {
+        long seed = seed(file);
+        store.close();
+        store = open(file, 64);
+        assertEquals(seed, seed(file));
+
+        File other = File.createTempFile("hawk-nonces", ".dat");
+        other.delete();
+        open(other, 64).close();
+        try {
+            assertTrue(seed != seed(other));
+        } finally {
+            other.delete();
+        }
+    }
+
+    @Test
+    public void testThatTimestampOutsideWindowIsReportedAsUsed() {
+        assertTrue(store.nonceHasBeenUsedBefore("abc", START - SKEW - 2, "n1"));
+    }
+
+    @Test
+    public void testThatExpiredSlotsAreReused() throws HawkProviderException {
+        for (int i = 0; i < 64; i++) {
+            assertTrue(store.noteNonceIfAbsent("abc", START, "n" + i));
+        }
+        try {
+            store.noteNonceIfAbsent("abc", START, "full");
+            fail("Expected HawkProviderException");
+        } catch (HawkProviderException e) {
+            // expected
+        }
+        clock.setSeconds(START + SKEW + 2);
+        assertTrue(store.noteNonceIfAbsent("abc", START + SKEW + 2, "n0"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testThatCapacityMismatchIsDetected() throws IOException {
+        open(file, 128);
+    }
+
+    private MappedNonceStore open(File file, int capacity) throws IOException {
+        MappedNonceStore store = new MappedNonceStore(file, capacity, SKEW);
+        store.setClock(clock);
+        return store;
+    }
+
+    private static long seed(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(8);
+            return raf.readLong();
+        } finally {
+            raf.close();
+        }
+    }
+}
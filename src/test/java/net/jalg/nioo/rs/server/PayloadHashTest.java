@@ -0,0 +1,94 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Payload hash test vector taken from the Hawk specification.
+ */
+public class PayloadHashTest {
+
+    public static final String BODY = "Thank you for flying Hawk";
+    public static final String HASH = "Yi9LfIIFRtBEPt74PVmbTF/xVAwPn7ub15ePICfgnuY=";
+
+    @Test
+    public void testThatPayloadHashMatchesSpecification() throws Exception {
+        MessageDigest digest = PayloadHash.start(Algorithm.SHA_256, "text/plain");
+        digest.update(BODY.getBytes("UTF-8"));
+        assertEquals(HASH, PayloadHash.finish(digest));
+    }
+
+    @Test
+    public void testThatContentTypeParametersAreIgnored() throws Exception {
+        MessageDigest digest = PayloadHash.start(Algorithm.SHA_256, "Text/Plain; charset=UTF-8");
+        digest.update(BODY.getBytes("UTF-8"));
+        assertEquals(HASH, PayloadHash.finish(digest));
+    }
+
+    @Test
+    public void testThatHashingInputStreamHashesUnreadBytes() throws IOException {
+        HashingInputStream in = new HashingInputStream(new ByteArrayInputStream(BODY.getBytes("UTF-8")),
+                PayloadHash.start(Algorithm.SHA_256, "text/plain"));
+        byte[] buffer = new byte[5];
+        in.read(buffer);
+        in.read();
+        assertEquals(HASH, in.finish());
+    }
+
+    @Test
+    public void testThatFileIsHashedFromPosition() throws IOException {
+        File file = File.createTempFile("payload-hash-test", ".txt");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write("skip".getBytes("UTF-8"));
+            out.write(BODY.getBytes("UTF-8"));
+            out.close();
+            FileInputStream in = new FileInputStream(file);
+            try {
+                MessageDigest digest = PayloadHash.start(Algorithm.SHA_256, "text/plain");
+                PayloadHash.update(digest, in.getChannel(), 4);
+                assertEquals(HASH, PayloadHash.finish(digest));
+                assertEquals(0, in.getChannel().position());
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testThatFileLargerThanBufferIsHashedCompletely() throws IOException {
+        byte[] body = new byte[200 * 1024 + 7];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        File file = File.createTempFile("payload-hash-test", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(body);
+            out.close();
+            FileInputStream in = new FileInputStream(file);
+            try {
+                MessageDigest digest = PayloadHash.start(Algorithm.SHA_256, "application/octet-stream");
+                PayloadHash.update(digest, in.getChannel(), 0);
+                MessageDigest expected = PayloadHash.start(Algorithm.SHA_256, "application/octet-stream");
+                expected.update(body);
+                assertEquals(PayloadHash.finish(expected), PayloadHash.finish(digest));
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.Test;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import static org.junit.Assert.assertEquals;
+
+public class RejectResponsesTest {
+
+    @Test
+    public void testThatStaleTimestampChallengeNamesRealm() {
+        Response response = new RejectResponses("test").staleTimestamp(1353832234);
+        assertEquals(401, response.getStatus());
+        assertEquals("Hawk realm=\"test\", ts=\"1353832234\", error=\"Stale timestamp\"",
+                response.getHeaderString(HttpHeaders.WWW_AUTHENTICATE));
+    }
+
+    @Test
+    public void testThatStaleTimestampChallengeWithoutRealm() {
+        Response response = new RejectResponses(null).staleTimestamp(1353832234);
+        assertEquals("Hawk ts=\"1353832234\", error=\"Stale timestamp\"",
+                response.getHeaderString(HttpHeaders.WWW_AUTHENTICATE));
+    }
+}
@@ -0,0 +1,95 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs several stores on localhost.
+ */
+public class ReplicatedNonceStoreTest {
+
+    public static final int SKEW = 10;
+
+    private final List<ReplicatedNonceStore> stores = new ArrayList<ReplicatedNonceStore>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (ReplicatedNonceStore store : stores) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testThatQuorumReplicationDetectsReplayAtOtherNodes() throws Exception {
+        List<ReplicatedNonceStore> cluster = cluster(3, ReplicatedNonceStore.Consistency.QUORUM);
+        long ts = now();
+        assertTrue(cluster.get(0).noteNonceIfAbsent("abc", ts, "n1"));
+        assertFalse(cluster.get(1).noteNonceIfAbsent("abc", ts, "n1"));
+        assertFalse(cluster.get(2).noteNonceIfAbsent("abc", ts, "n1"));
+        assertTrue(cluster.get(1).noteNonceIfAbsent("abc", ts, "n2"));
+    }
+
+    @Test
+    public void testThatAsyncReplicationReachesPeers() throws Exception {
+        List<ReplicatedNonceStore> cluster = cluster(2, ReplicatedNonceStore.Consistency.ASYNC);
+        long ts = now();
+        assertTrue(cluster.get(0).noteNonceIfAbsent("abc", ts, "n1"));
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!cluster.get(1).nonceHasBeenUsedBefore("abc", ts, "n1")) {
+            assertTrue("Nonce not replicated in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test(expected = HawkProviderException.class)
+    public void testThatQuorumFailsWithoutPeers() throws Exception {
+        ReplicatedNonceStore store = store(ReplicatedNonceStore.Consistency.QUORUM);
+        store.addPeer(new InetSocketAddress("localhost", unusedPort()));
+        store.noteNonceIfAbsent("abc", now(), "n1");
+    }
+
+    private List<ReplicatedNonceStore> cluster(int size, ReplicatedNonceStore.Consistency consistency)
+            throws IOException {
+        List<ReplicatedNonceStore> cluster = new ArrayList<ReplicatedNonceStore>();
+        for (int i = 0; i < size; i++) {
+            cluster.add(store(consistency));
+        }
+        for (ReplicatedNonceStore store : cluster) {
+            for (ReplicatedNonceStore peer : cluster) {
+                if (peer != store) {
+                    store.addPeer(new InetSocketAddress("localhost", peer.getPort()));
+                }
+            }
+        }
+        return cluster;
+    }
+
+    private ReplicatedNonceStore store(ReplicatedNonceStore.Consistency consistency) throws IOException {
+        ReplicatedNonceStore store = new ReplicatedNonceStore(new InMemoryNonceStore(SKEW),
+                new InetSocketAddress("localhost", 0), consistency, 5000L);
+        stores.add(store);
+        return store;
+    }
+
+    private static int unusedPort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000L;
+    }
+}
@@ -0,0 +1,70 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+import net.jalg.hawkj.AuthorizationHeader;
+import net.jalg.hawkj.HawkContext;
+import org.junit.Test;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResponseHashCacheTest {
+
+    @Test
+    public void testThatCachedHashIsReturned() {
+        ResponseHashCache cache = new ResponseHashCache(10);
+        cache.put("key", "hash", 1L);
+        assertEquals("hash", cache.get("key", 2L));
+        assertNull(cache.get("other", 2L));
+    }
+
+    @Test
+    public void testThatRecentlyUsedHashSurvivesEviction() {
+        ResponseHashCache cache = new ResponseHashCache(2);
+        cache.put("a", "1", 1L);
+        cache.put("b", "2", 2L);
+        cache.get("a", 3L);
+        cache.put("c", "3", 4L);
+        assertEquals("1", cache.get("a", 5L));
+        assertNull(cache.get("b", 5L));
+        assertEquals("3", cache.get("c", 5L));
+    }
+
+    @Test
+    public void testThatClearRemovesAllHashes() {
+        ResponseHashCache cache = new ResponseHashCache(10);
+        cache.put("key", "hash", 1L);
+        cache.clear();
+        assertNull(cache.get("key", 2L));
+    }
+
+    @Test
+    public void testThatQueryVariantsSharingETagAreHashedSeparately() throws Exception {
+        HawkServerFilter filter = new HawkServerFilter(new HawkServerFilterTest.TestProvider(), false, true);
+        filter.setReuseCryptoEngines(true);
+        filter.setResponseHashCache(new ResponseHashCache(10));
+        long now = System.currentTimeMillis() / 1000L;
+        assertEquals("hash:one", respond(filter, "http://localhost:8082/myapp/test?v=1", now, "n1", "one"));
+        assertEquals("hash:two", respond(filter, "http://localhost:8082/myapp/test?v=2", now, "n2", "two"));
+        assertEquals("hash:one", respond(filter, "http://localhost:8082/myapp/test?v=1", now, "n3", "one"));
+    }
+
+    private static String respond(HawkServerFilter filter, String uri, long ts, String nonce, String body)
+            throws Exception {
+        TestRequestContext request = TestRequestContext.signed("GET", URI.create(uri), ts, nonce);
+        filter.filter(request.proxy());
+        assertNull(request.getAbortResponse());
+        TestWriterContext response = new TestWriterContext(request.getProperties(), body.getBytes("UTF-8"),
+                MediaType.TEXT_PLAIN_TYPE);
+        response.getHeaders().add(HttpHeaders.ETAG, "\"same\"");
+        filter.aroundWriteTo(response.proxy());
+        String hash = AuthorizationHeader.authorization(
+                (String) response.getHeaders().getFirst(HawkContext.SERVER_AUTHORIZATION)).getHash();
+        String expected = HawkCrypto.payloadHash(Algorithm.SHA_256, body.getBytes("UTF-8"), "text/plain");
+        return hash.equals(expected) ? "hash:" + body : hash;
+    }
+}
@@ -0,0 +1,180 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+import net.jalg.hawkj.AuthorizationHeader;
+import net.jalg.hawkj.HawkContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResponseHashingOutputStreamTest {
+
+    private byte[] body;
+    private ByteArrayOutputStream target;
+    private MultivaluedMap<String, Object> headers;
+    private HawkContext requestHawk;
+
+    @Before
+    public void setUp() throws Exception {
+        body = PayloadHashTest.BODY.getBytes("UTF-8");
+        target = new ByteArrayOutputStream();
+        headers = new MultivaluedHashMap<String, Object>();
+        requestHawk = HawkContext.request("GET", "/test", "localhost", 8080)
+                .credentials("someId", "somePassword", Algorithm.SHA_256)
+                .tsAndNonce(1353832234L, "j4h3g2").build();
+    }
+
+    @Test
+    public void testThatBodyBelowLimitIsHashed() throws Exception {
+        ResponseHashingOutputStream out = stream(body.length + 1);
+        out.write(body, 0, 5);
+        out.write(body, 5, body.length - 5);
+        assertEquals(0, target.size());
+        assertTrue(headers.isEmpty());
+        out.finish();
+        assertHashed(out);
+    }
+
+    @Test
+    public void testThatBodyAtLimitIsHashed() throws Exception {
+        ResponseHashingOutputStream out = stream(body.length);
+        out.write(body, 0, 5);
+        out.write(body, 5, body.length - 5);
+        assertEquals(0, target.size());
+        out.close();
+        assertHashed(out);
+    }
+
+    @Test
+    public void testThatBodyAboveLimitIsStreamedWithoutHashIfAllowed() throws Exception {
+        ResponseHashingOutputStream out = stream(body.length - 1, true);
+        out.write(body, 0, 5);
+        out.write(body, 5, body.length - 5);
+        assertEquals(PayloadHashTest.BODY, target.toString("UTF-8"));
+        assertEquals(1, serverAuthorization().size());
+        out.finish();
+        List<Object> values = serverAuthorization();
+        assertEquals(1, values.size());
+        assertNull(AuthorizationHeader.authorization((String) values.get(0)).getHash());
+        assertNull(out.getHash());
+        assertTrue(out.isStreaming());
+    }
+
+    @Test
+    public void testThatBodyAboveLimitFailsByDefault() throws Exception {
+        ResponseHashingOutputStream out = stream(body.length - 1);
+        out.write(body, 0, 5);
+        try {
+            out.write(body, 5, body.length - 5);
+            fail("Expected LimitExceededException");
+        } catch (ResponseHashingOutputStream.LimitExceededException e) {
+            // expected
+        }
+        assertEquals(0, target.size());
+        assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    public void testThatFilterAnswersOversizedBodyWith500() throws Exception {
+        CountingMetrics metrics = new CountingMetrics();
+        HawkServerFilter filter = filter(metrics);
+        try {
+            respond(filter, "n1");
+            fail("Expected WebApplicationException");
+        } catch (WebApplicationException e) {
+            assertEquals(500, e.getResponse().getStatus());
+        }
+        assertEquals(1, metrics.failed);
+        assertEquals(0, metrics.streamed);
+    }
+
+    @Test
+    public void testThatFilterCountsUnhashedResponses() throws Exception {
+        CountingMetrics metrics = new CountingMetrics();
+        HawkServerFilter filter = filter(metrics);
+        filter.setStreamUnhashedResponses(true);
+        TestWriterContext response = respond(filter, "n1");
+        assertEquals(PayloadHashTest.BODY, new String(response.getBody(), "UTF-8"));
+        assertNull(AuthorizationHeader.authorization(
+                (String) response.getHeaders().getFirst(HawkContext.SERVER_AUTHORIZATION)).getHash());
+        assertEquals(0, metrics.failed);
+        assertEquals(1, metrics.streamed);
+    }
+
+    private ResponseHashingOutputStream stream(int bufferLimit) {
+        return stream(bufferLimit, false);
+    }
+
+    private ResponseHashingOutputStream stream(int bufferLimit, boolean streamUnhashed) {
+        return new ResponseHashingOutputStream(target, headers, requestHawk,
+                PayloadHash.start(Algorithm.SHA_256, "text/plain"), bufferLimit, streamUnhashed);
+    }
+
+    private HawkServerFilter filter(HawkMetrics metrics) {
+        HawkServerFilter filter = new HawkServerFilter(new HawkServerFilterTest.TestProvider(), false, true);
+        filter.setReuseCryptoEngines(true);
+        filter.setResponseBufferLimit(body.length - 1);
+        filter.setMetrics(metrics);
+        return filter;
+    }
+
+    private TestWriterContext respond(HawkServerFilter filter, String nonce) throws Exception {
+        TestRequestContext request = TestRequestContext.signed("GET",
+                URI.create("http://localhost:8082/myapp/test"), System.currentTimeMillis() / 1000L, nonce);
+        filter.filter(request.proxy());
+        assertNull(request.getAbortResponse());
+        TestWriterContext response = new TestWriterContext(request.getProperties(), body, MediaType.TEXT_PLAIN_TYPE);
+        filter.aroundWriteTo(response.proxy());
+        return response;
+    }
+
+    private List<Object> serverAuthorization() {
+        List<Object> values = headers.get(HawkContext.SERVER_AUTHORIZATION);
+        assertNotNull(values);
+        return values;
+    }
+
+    private void assertHashed(ResponseHashingOutputStream out) throws Exception {
+        assertEquals(PayloadHashTest.BODY, target.toString("UTF-8"));
+        List<Object> values = serverAuthorization();
+        assertEquals(1, values.size());
+        assertEquals(PayloadHashTest.HASH, AuthorizationHeader.authorization((String) values.get(0)).getHash());
+        assertEquals(PayloadHashTest.HASH, out.getHash());
+    }
+
+    private static class CountingMetrics implements HawkMetrics {
+
+        private int streamed;
+        private int failed;
+
+        @Override
+        public void recordTime(Stage stage, long nanos) {
+        }
+
+        @Override
+        public void countRejection(Rejection rejection) {
+        }
+
+        @Override
+        public void countOversizedResponse(boolean streamed) {
+            if (streamed) {
+                this.streamed++;
+            } else {
+                failed++;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class SpillingBufferTest {
+
+    @Test
+    public void testThatSpilledBodyIsHashedAndReplayed() throws IOException {
+        SpillingBuffer buffer = new SpillingBuffer(5, -1, PayloadHash.start(Algorithm.SHA_256, "text/plain"));
+        try {
+            assertEquals(PayloadHashTest.HASH, buffer.readFrom(body()));
+            assertEquals(PayloadHashTest.BODY, read(buffer.getInputStream()));
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void testThatSmallBodyStaysInMemory() throws IOException {
+        SpillingBuffer buffer = new SpillingBuffer(1024, -1, PayloadHash.start(Algorithm.SHA_256, "text/plain"));
+        try {
+            assertEquals(PayloadHashTest.HASH, buffer.readFrom(body()));
+            assertEquals(PayloadHashTest.BODY, read(buffer.getInputStream()));
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test(expected = PayloadTooLargeException.class)
+    public void testThatBodyAboveMaximumIsRejected() throws IOException {
+        SpillingBuffer buffer = new SpillingBuffer(5, 10, PayloadHash.start(Algorithm.SHA_256, "text/plain"));
+        try {
+            buffer.readFrom(body());
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test(expected = PayloadTooLargeException.class)
+    public void testThatHashingInputStreamEnforcesMaximum() throws IOException {
+        HashingInputStream in = new HashingInputStream(body(),
+                PayloadHash.start(Algorithm.SHA_256, "text/plain"), 10);
+        in.finish();
+    }
+
+    private static InputStream body() throws IOException {
+        return new ByteArrayInputStream(PayloadHashTest.BODY.getBytes("UTF-8"));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,30 @@
+package net.jalg.nioo.rs.server;
+
+/**
+ * HawkClock that only moves when a test sets or advances it.
+ */
+public class TestClock implements HawkClock {
+
+    private volatile long millis;
+
+    public TestClock(long millis) {
+        this.millis = millis;
+    }
+
+    public static TestClock ofSeconds(long seconds) {
+        return new TestClock(seconds * 1000L);
+    }
+
+    public void setSeconds(long seconds) {
+        this.millis = seconds * 1000L;
+    }
+
+    public void advance(long millis) {
+        this.millis += millis;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return millis;
+    }
+}
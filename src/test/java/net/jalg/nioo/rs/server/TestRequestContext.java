@@ -0,0 +1,118 @@
+package net.jalg.nioo.rs.server;
+
+import net.jalg.hawkj.Algorithm;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.UriInfo;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ContainerRequestContext for calling the filter without a container. Only the
+ * methods used by the filter are supported.
+ */
+public class TestRequestContext implements InvocationHandler {
+
+    private final String method;
+    private final URI requestUri;
+    private final MultivaluedMap<String, String> headers = new MultivaluedHashMap<String, String>();
+    private final Map<String, Object> properties = new HashMap<String, Object>();
+    private SecurityContext securityContext;
+    private Response abortResponse;
+
+    public TestRequestContext(String method, URI requestUri) {
+        this.method = method;
+        this.requestUri = requestUri;
+    }
+
+    /**
+     * Create a context with an Authorization header the filter accepts for the
+     * credentials of HawkServerFilterTest.TestProvider. Like the filter, the MAC
+     * covers the path of the request URI only.
+     */
+    public static TestRequestContext signed(String method, URI requestUri, long ts, String nonce) {
+        TestRequestContext context = new TestRequestContext(method, requestUri);
+        String normalized = "hawk.1.header\n" + ts + "\n" + nonce + "\n" + method + "\n" + requestUri.getPath() + "\n"
+                + requestUri.getHost() + "\n" + requestUri.getPort() + "\n\n\n";
+        String mac = HawkCrypto.hmac(Algorithm.SHA_256, HawkServerFilterTest.PWD, normalized);
+        context.headers.add(HttpHeaders.AUTHORIZATION, "Hawk id=\"" + HawkServerFilterTest.ID + "\", ts=\"" + ts
+                + "\", nonce=\"" + nonce + "\", mac=\"" + mac + "\"");
+        return context;
+    }
+
+    public ContainerRequestContext proxy() {
+        return (ContainerRequestContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ContainerRequestContext.class}, this);
+    }
+
+    public Response getAbortResponse() {
+        return abortResponse;
+    }
+
+    public SecurityContext getSecurityContext() {
+        return securityContext;
+    }
+
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method m, Object[] args) {
+        String name = m.getName();
+        if (name.equals("getHeaders")) {
+            return headers;
+        } else if (name.equals("getHeaderString")) {
+            return headers.getFirst((String) args[0]);
+        } else if (name.equals("getMethod")) {
+            return method;
+        } else if (name.equals("getUriInfo")) {
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{UriInfo.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method m, Object[] args) {
+                            if (m.getName().equals("getRequestUri")) {
+                                return requestUri;
+                            }
+                            throw new UnsupportedOperationException(m.getName());
+                        }
+                    });
+        } else if (name.equals("getSecurityContext")) {
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{SecurityContext.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method m, Object[] args) {
+                            if (m.getName().equals("isSecure")) {
+                                return Boolean.FALSE;
+                            }
+                            throw new UnsupportedOperationException(m.getName());
+                        }
+                    });
+        } else if (name.equals("setSecurityContext")) {
+            securityContext = (SecurityContext) args[0];
+            return null;
+        } else if (name.equals("getProperty")) {
+            return properties.get(args[0]);
+        } else if (name.equals("setProperty")) {
+            properties.put((String) args[0], args[1]);
+            return null;
+        } else if (name.equals("abortWith")) {
+            abortResponse = (Response) args[0];
+            return null;
+        } else if (name.equals("hasEntity")) {
+            return Boolean.FALSE;
+        } else if (name.equals("getMediaType")) {
+            return null;
+        }
+        throw new UnsupportedOperationException(name);
+    }
+}
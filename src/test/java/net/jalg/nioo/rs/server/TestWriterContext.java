@@ -0,0 +1,76 @@
+package net.jalg.nioo.rs.server;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * WriterInterceptorContext for calling the writer interceptor without a container.
+ * Proceeding writes the byte array entity to the current output stream.
+ */
+public class TestWriterContext implements InvocationHandler {
+
+    private final Map<String, Object> properties;
+    private final byte[] entity;
+    private final MediaType mediaType;
+    private final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<String, Object>();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private OutputStream out = body;
+
+    /**
+     * @param properties The request properties, usually those set by the filter.
+     */
+    public TestWriterContext(Map<String, Object> properties, byte[] entity, MediaType mediaType) {
+        this.properties = properties;
+        this.entity = entity;
+        this.mediaType = mediaType;
+    }
+
+    public WriterInterceptorContext proxy() {
+        return (WriterInterceptorContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WriterInterceptorContext.class}, this);
+    }
+
+    public MultivaluedMap<String, Object> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body.toByteArray();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method m, Object[] args) throws IOException {
+        String name = m.getName();
+        if (name.equals("getHeaders")) {
+            return headers;
+        } else if (name.equals("getProperty")) {
+            return properties.get(args[0]);
+        } else if (name.equals("setProperty")) {
+            properties.put((String) args[0], args[1]);
+            return null;
+        } else if (name.equals("getMediaType")) {
+            return mediaType;
+        } else if (name.equals("getEntity")) {
+            return entity;
+        } else if (name.equals("getOutputStream")) {
+            return out;
+        } else if (name.equals("setOutputStream")) {
+            out = (OutputStream) args[0];
+            return null;
+        } else if (name.equals("proceed")) {
+            out.write(entity);
+            return null;
+        }
+        throw new UnsupportedOperationException(name);
+    }
+}
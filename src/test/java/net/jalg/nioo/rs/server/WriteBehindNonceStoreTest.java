@@ -0,0 +1,121 @@
+package net.jalg.nioo.rs.server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WriteBehindNonceStoreTest {
+
+    public static final int SKEW = 10;
+
+    private final long now = System.currentTimeMillis() / 1000L;
+
+    @Test
+    public void testThatReplayIsDetectedBeforeWrite() throws Exception {
+        RecordingNonceStore backing = new RecordingNonceStore(new CountDownLatch(1));
+        WriteBehindNonceStore store = new WriteBehindNonceStore(backing, SKEW, 100, 10, 60000L,
+                WriteBehindNonceStore.OverflowPolicy.BLOCK);
+        assertTrue(store.noteNonceIfAbsent("abc", now, "n1"));
+        assertFalse(store.noteNonceIfAbsent("abc", now, "n1"));
+        assertTrue(store.nonceHasBeenUsedBefore("abc", now, "n1"));
+        backing.release.countDown();
+        store.close();
+    }
+
+    @Test
+    public void testThatNoncesAreWrittenInBatches() throws Exception {
+        RecordingNonceStore backing = new RecordingNonceStore(new CountDownLatch(0));
+        WriteBehindNonceStore store = new WriteBehindNonceStore(backing, SKEW, 100, 10, 60000L,
+                WriteBehindNonceStore.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 25; i++) {
+            assertTrue(store.noteNonceIfAbsent("abc", now, "n" + i));
+        }
+        store.close();
+        assertEquals(25, backing.written());
+        for (Integer size : backing.batchSizes) {
+            assertTrue(size <= 10);
+        }
+    }
+
+    @Test
+    public void testThatNonceKnownToBackingStoreIsRejected() throws Exception {
+        RecordingNonceStore backing = new RecordingNonceStore(new CountDownLatch(0));
+        backing.noteNonce("abc", now, "n1");
+        WriteBehindNonceStore store = new WriteBehindNonceStore(backing, SKEW, 100, 10, 60000L,
+                WriteBehindNonceStore.OverflowPolicy.BLOCK);
+        assertFalse(store.noteNonceIfAbsent("abc", now, "n1"));
+        store.close();
+    }
+
+    @Test
+    public void testThatFullQueueFailsClosed() throws Exception {
+        RecordingNonceStore backing = new RecordingNonceStore(new CountDownLatch(1));
+        WriteBehindNonceStore store = new WriteBehindNonceStore(backing, SKEW, 2, 1, 60000L,
+                WriteBehindNonceStore.OverflowPolicy.FAIL_CLOSED);
+        assertTrue(store.noteNonceIfAbsent("abc", now, "n1"));
+        assertTrue(store.noteNonceIfAbsent("abc", now, "n2"));
+        try {
+            store.noteNonceIfAbsent("abc", now, "n3");
+            fail("Expected HawkProviderException");
+        } catch (HawkProviderException e) {
+            // expected
+        }
+        backing.release.countDown();
+        store.close();
+        assertEquals(2, backing.written());
+    }
+
+    @Test
+    public void testThatFullQueueFallsBackToLocalOnly() throws Exception {
+        RecordingNonceStore backing = new RecordingNonceStore(new CountDownLatch(1));
+        WriteBehindNonceStore store = new WriteBehindNonceStore(backing, SKEW, 1, 1, 60000L,
+                WriteBehindNonceStore.OverflowPolicy.LOCAL_ONLY);
+        assertTrue(store.noteNonceIfAbsent("abc", now, "n1"));
+        assertTrue(store.noteNonceIfAbsent("abc", now, "n2"));
+        assertFalse(store.noteNonceIfAbsent("abc", now, "n2"));
+        assertEquals(1, store.getDroppedCount());
+        backing.release.countDown();
+        store.close();
+    }
+
+    public static class RecordingNonceStore extends InMemoryNonceStore implements BatchNonceStore {
+
+        private final CountDownLatch release;
+        private final List<Integer> batchSizes = new ArrayList<Integer>();
+
+        public RecordingNonceStore(CountDownLatch release) {
+            super(SKEW);
+            this.release = release;
+        }
+
+        @Override
+        public void noteNonces(List<UsedNonce> nonces) throws HawkProviderException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new HawkProviderException("Interrupted", e);
+            }
+            synchronized (this) {
+                batchSizes.add(nonces.size());
+            }
+            for (UsedNonce n : nonces) {
+                noteNonce(n.getId(), n.getTs(), n.getNonce());
+            }
+        }
+
+        private synchronized int written() {
+            int sum = 0;
+            for (Integer size : batchSizes) {
+                sum += size;
+            }
+            return sum;
+        }
+    }
+}